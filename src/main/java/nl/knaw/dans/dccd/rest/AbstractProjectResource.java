@@ -15,14 +15,27 @@
  ******************************************************************************/
 package nl.knaw.dans.dccd.rest;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.lang.StringEscapeUtils;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
@@ -35,11 +48,15 @@ import nl.knaw.dans.dccd.search.DccdSB;
 import nl.knaw.dans.dccd.util.StringUtil;
 
 import nl.knaw.dans.dccd.application.services.DataServiceException;
-import nl.knaw.dans.dccd.application.services.DccdDataService;
-import nl.knaw.dans.dccd.application.services.DccdUserService;
 import nl.knaw.dans.dccd.application.services.UserServiceException;
 import nl.knaw.dans.dccd.model.DccdUser;
-import nl.knaw.dans.dccd.model.Project;
+import nl.knaw.dans.dccd.rest.archival.ProjectAttributeStore;
+import nl.knaw.dans.dccd.rest.cache.ProjectSummaryCache;
+import nl.knaw.dans.dccd.rest.cache.UserDirectoryCache;
+import nl.knaw.dans.dccd.rest.util.DocumentFragment;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
+import nl.knaw.dans.dccd.rest.util.EnrichmentExecutor;
 
 /**
  * 
@@ -72,10 +89,54 @@ public abstract class AbstractProjectResource extends AbstractResource {
 	public static final String PROJECT_ORGANISATION_ID = "project.organisation.id";
 	public static final String PROJECT_TITLE = "project.title";
 	public static final String PROJECT_ID = "project.id";
+	public static final String CURSOR_PARAM = "cursor";
+	public static final String FIELDS_PARAM = "fields";
+
+	/**
+	 * The project information to include, as a comma separated list of element names; 
+	 * everything when not specified. The sid is always included. 
+	 * Leaving out 'ownerOrganizationId' and 'language' saves going to the user service and the archive.
+	 */
+	@QueryParam(FIELDS_PARAM)
+	private String fieldsParam;
+	private Set<String> requestedFields;
+
+	// the cached summaries and enrichment lookups of the page being rendered, see prefetchEnrichment
+	private Map<String, DocumentFragment> pageSummaries = new HashMap<String, DocumentFragment>();
+	private Map<String, DccdUser> pageOwners = new HashMap<String, DccdUser>();
+	private Map<String, Future<DccdUser>> ownerLookups = new HashMap<String, Future<DccdUser>>();
+	private Map<String, Future<String>> languageLookups = new HashMap<String, Future<String>>();
+	private long lookupDeadline;
+	// some information was left out, so it should not be cached
+	private boolean enrichmentIncomplete = false;
+
+	/**
+	 * @param name
+	 *            The element name of the field
+	 * @return true if the field is requested, which is the case for all fields when 'fields' is not used
+	 */
+	protected boolean isFieldRequested(final String name) {
+		return getRequestedFields() == null || getRequestedFields().contains(name);
+	}
+
+	/**
+	 * @return The requested fields, or null for all
+	 */
+	private Set<String> getRequestedFields() {
+		if (requestedFields == null && fieldsParam != null && !fieldsParam.trim().isEmpty()) {
+			requestedFields = new TreeSet<String>();
+			requestedFields.add("sid");
+			for (String name : fieldsParam.split(",")) {
+				if (!name.trim().isEmpty())
+					requestedFields.add(name.trim());
+			}
+		}
+		return requestedFields;
+	}
 
 
 	/**
-	 * Construct search result list information as XML String
+	 * Construct search result list information as XML (or JSON) document
 	 * 
 	 * @param searchResults
 	 *            The results
@@ -83,109 +144,289 @@ public abstract class AbstractProjectResource extends AbstractResource {
 	 *            Number of results to skip
 	 * @param limit
 	 *            Number of results in this list
-	 * @return The XML String
+	 * @return The renderer for the document
 	 */
-	protected String getProjectListSearchResultAsXml(
-			SearchResult<? extends DccdSB> searchResults, int offset, int limit, DccdUser requestingUser) {
-		java.io.StringWriter sw = new StringWriter();
+	protected DocumentRenderer getProjectListSearchResultAsXml(
+			final SearchResult<? extends DccdSB> searchResults, final int offset, final int limit, 
+			final DccdUser requestingUser) {
+		return getProjectListSearchResultAsXml(searchResults, offset, limit, requestingUser, null);
+	}
 
-		sw.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"); // XML
-																					// instruction
-		sw.append("<projects" + " total=\"" + searchResults.getTotalHits()
-				+ "\"" + " offset=\"" + offset + "\"" + " limit=\"" + limit
-				+ "\"" + ">");
+	/**
+	 * Construct search result list information as XML (or JSON) document, 
+	 * for a page that was requested with a cursor
+	 * 
+	 * @param searchResults
+	 *            The results
+	 * @param page
+	 *            The results of the page, null if all results are on the page
+	 * @param offset
+	 *            Number of results to skip
+	 * @param limit
+	 *            Number of results in this list
+	 * @return The renderer for the document
+	 */
+	protected DocumentRenderer getProjectListSearchResultAsXml(
+			final SearchResult<? extends DccdSB> searchResults, final int offset, final int limit, 
+			final DccdUser requestingUser, final ListCursor.Page page) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				prefetchEnrichment(searchResults);
 
-		for (SearchHit<? extends DccdSB> hit : searchResults.getHits()) {
-			sw.append("<project>");
-			appendSearchResultDataAsXml(sw, hit.getData(), requestingUser);
-			sw.append("</project>");
+				writer.startElement("projects");
+				long total = page != null ? page.getTotal() : searchResults.getTotalHits();
+				writer.attribute("total", String.valueOf(total));
+				writer.attribute("offset", Integer.toString(offset));
+				writer.attribute("limit", Integer.toString(limit));
+				if (page != null && page.getNext() != null)
+					writer.attribute("next", page.getNext().format());
+
+				List<? extends SearchHit<? extends DccdSB>> hits = 
+						page != null ? page.getHits() : searchResults.getHits();
+				for (SearchHit<? extends DccdSB> hit : hits) {
+					writer.startElement("project");
+					appendSearchResultDataAsXml(writer, hit.getData(), requestingUser);
+					writer.endElement();
+				}
+				writer.endElement();
+			}
+		};
+	}
+
+	/**
+	 * Parse the cursor request parameter
+	 * 
+	 * @param cursorStr
+	 *            The parameter, null when offset paging is used
+	 * @param sortField
+	 *            The field the list is sorted on
+	 * @return The cursor, or null when offset paging is used
+	 * @throws IllegalArgumentException
+	 *             When the cursor is not valid for this list
+	 */
+	protected ListCursor getCursor(final String cursorStr, final String sortField) 
+			throws IllegalArgumentException {
+		if (cursorStr == null || cursorStr.isEmpty())
+			return null;
+		return ListCursor.parse(cursorStr, sortField);
+	}
+
+	/**
+	 * Response for a single project, but when the client already has the current version 
+	 * it gets '304 Not Modified' without rendering the document again.
+	 * 
+	 * The document is rendered before the response is sent, 
+	 * when a lookup of the owner or language failed or took too long it is sent without ETag and Last-Modified; 
+	 * otherwise a client could keep the incomplete document until the project changes.
+	 * 
+	 * @param dccdSB
+	 *            search result for the project
+	 * @param requestingUser
+	 *            the user, null for anonymous requests
+	 * @param renderer
+	 *            constructs the document
+	 * @return The response
+	 */
+	protected Response responseProjectXmlOrJson(DccdSB dccdSB, DccdUser requestingUser, 
+			DocumentRenderer renderer) {
+		String mediaType = getResponseMediaType();
+		if (mediaType == null || dccdSB.getAdministrativeStateLastChange() == null) {
+			// don't know the version
+			return responseXmlOrJson(renderer);
+		}
+		
+		EntityTag eTag = getProjectEntityTag(dccdSB, requestingUser, mediaType);
+		Date lastModified = dccdSB.getAdministrativeStateLastChange().toDate();
+		
+		ResponseBuilder builder = getRequest().evaluatePreconditions(lastModified, eTag);
+		if (builder != null) {
+			return builder.tag(eTag).lastModified(lastModified)
+					.header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.AUTHORIZATION)
+					.build();
 		}
-		sw.append("</projects>");
 
-		return sw.toString();
+		// changed, the complete document is needed
+		prefetchEnrichment(Collections.singletonList(dccdSB));
+		enrichmentIncomplete = false;
+		final DocumentFragment document = DocumentFragment.record(renderer);
+		builder = responseBuilderXmlOrJson(new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				document.replay(writer);
+			}
+		});
+		if (!enrichmentIncomplete)
+			builder.tag(eTag).lastModified(lastModified);
+		return builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.AUTHORIZATION)
+				.build();
+	}
+	
+	/**
+	 * The strong ETag of the project document, 
+	 * it changes when the project is changed and differs for what the requesting user is allowed to see. 
+	 * 
+	 * @param dccdSB
+	 * @param requestingUser
+	 * @param mediaType
+	 *            XML and JSON are different representations
+	 * @return The ETag
+	 */
+	protected EntityTag getProjectEntityTag(DccdSB dccdSB, DccdUser requestingUser, String mediaType) {
+		String role = requestingUser == null ? "anonymous" : (isAdmin(requestingUser) ? "admin" : "user");
+		String format = MediaType.APPLICATION_JSON.equals(mediaType) ? "json" : "xml";
+		String fields = getRequestedFields() == null ? "" : "-" + StringUtils.join(getRequestedFields(), '.');
+		return new EntityTag(dccdSB.getPid() 
+				+ "-" + dccdSB.getAdministrativeStateLastChange().getMillis() 
+				+ "-" + dccdSB.getPermissionDefaultLevel() 
+				+ "-" + role 
+				+ "-" + format
+				+ fields);
 	}
 
 	/**
 	 * Append search result information as XML String
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
 	protected abstract void appendSearchResultDataAsXml(
-			java.io.StringWriter sw, DccdSB dccdSB, DccdUser requestingUser);
+			DocumentWriter writer, DccdSB dccdSB, DccdUser requestingUser);
+
+	/**
+	 * Append all the information anyone is allowed to see, including the permission.
+	 * This is the same for every request, so it is only rendered again when the project has changed.
+	 * Only when some of the fields are requested it is rendered each time, which is cheap without the remote ones.
+	 * 
+	 * @param writer
+	 *            writer to append to
+	 * @param dccdSB
+	 *            search result
+	 */
+	protected void appendProjectPublicSummaryAsXml(DocumentWriter writer,
+			final DccdSB dccdSB) {
+		if (getRequestedFields() != null) {
+			appendProjectPublicSummaryContentAsXml(writer, dccdSB);
+			return;
+		}
+
+		ProjectSummaryCache cache = ProjectSummaryCache.getInstance();
+		String key = ProjectSummaryCache.getKey(dccdSB);
+		// the summaries of a page are already taken from the cache by prefetchEnrichment
+		boolean onPage = pageSummaries.containsKey(key);
+		DocumentFragment summary = onPage ? pageSummaries.get(key) : cache.get(key);
+		if (summary == null) {
+			boolean incompleteBefore = enrichmentIncomplete;
+			enrichmentIncomplete = false;
+			summary = DocumentFragment.record(new DocumentRenderer() {
+				public void render(DocumentWriter fragmentWriter) {
+					appendProjectPublicSummaryContentAsXml(fragmentWriter, dccdSB);
+				}
+			});
+			if (!enrichmentIncomplete)
+				cache.put(key, summary);
+			enrichmentIncomplete |= incompleteBefore;
+			if (onPage)
+				pageSummaries.put(key, summary);
+		}
+		writer.fragment(summary);
+	}
+
+	private void appendProjectPublicSummaryContentAsXml(DocumentWriter writer,
+			final DccdSB dccdSB) {
+		appendProjectPublicDataAsXml(writer, dccdSB);
+
+		appendProjectPublicLocationAsXml(writer, dccdSB);
+		appendProjectPublicTimeRangeAsXml(writer, dccdSB);
+
+		appendProjectPublicTaxonsAsXml(writer, dccdSB);
+		appendProjectPublicTypesAsXml(writer, dccdSB);
 
-	// TODO strings need to be escaped for xml, maybe use a lib for constructing
-	// xml
+		appendProjectPublicDescriptionAsXml(writer, dccdSB);
+
+		// permission
+		appendProjectPermissionAsXml(writer, dccdSB);
+	}
 
 	/**
 	 * Append information anyone is allowed to see
 	 * The most important project data but not identical to TRiDaS!
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendProjectPublicDataAsXml(java.io.StringWriter sw,
+	protected void appendProjectPublicDataAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
 		// Note the Fedora pid is our sid, but sometimes called pid anyway;
 		// confusing I know
-		sw.append(getXMLElementString("sid", dccdSB.getPid()));
+		writer.element("sid", dccdSB.getPid());
 
 		// modified timestamp
 		// convert to UTC and format as ISO
-		DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
-		DateTime dUtc = dccdSB.getAdministrativeStateLastChange().toDateTime(DateTimeZone.UTC);
-		//sw.append(getXMLElementString("stateChanged", dccdSB.getAdministrativeStateLastChange().toString()));
-		sw.append(getXMLElementString("stateChanged", fmt.print(dUtc)));		
+		if (isFieldRequested("stateChanged")) {
+			DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
+			DateTime dUtc = dccdSB.getAdministrativeStateLastChange().toDateTime(DateTimeZone.UTC);
+			//writer.element("stateChanged", dccdSB.getAdministrativeStateLastChange().toString());
+			writer.element("stateChanged", fmt.print(dUtc));		
+		}
 		
 		// Not at first only added title, so a client can show something in a
 		// user interface,
 		// but now we put in (almost) everything from the search results.
 
 		// title
-		sw.append(getXMLElementString("title", dccdSB.getTridasProjectTitle()));
+		if (isFieldRequested("title"))
+			writer.element("title", dccdSB.getTridasProjectTitle());
 
 		// identifier
-		sw.append(getXMLElementString("identifier", dccdSB.getTridasProjectIdentifier()));
+		if (isFieldRequested("identifier"))
+			writer.element("identifier", dccdSB.getTridasProjectIdentifier());
 
 		// category, but not std, normal etc.
-		sw.append(getXMLElementString("category", dccdSB.getTridasProjectCategory()));
+		if (isFieldRequested("category"))
+			writer.element("category", dccdSB.getTridasProjectCategory());
 		
 		// investigator
-		sw.append(getXMLElementString("investigator", dccdSB.getTridasProjectInvestigator()));
+		if (isFieldRequested("investigator"))
+			writer.element("investigator", dccdSB.getTridasProjectInvestigator());
 		
 		// lab(s) (combined name, address, but not concatenated...)
-		sw.append("<laboratories>");
-		for (String lab : dccdSB.getTridasProjectLaboratoryCombined()) {
-			sw.append(getXMLElementString("laboratory", lab));
+		if (isFieldRequested("laboratories")) {
+			writer.startElement("laboratories");
+			for (String lab : dccdSB.getTridasProjectLaboratoryCombined()) {
+				writer.element("laboratory", lab);
+			}
+			writer.endElement();
 		}
-		sw.append("</laboratories>");
 		
 		// type(s)
-		sw.append("<types>");
-		for (String type : dccdSB.getTridasProjectType()) {
-			sw.append(getXMLElementString("type", type));
+		if (isFieldRequested("types")) {
+			writer.startElement("types");
+			for (String type : dccdSB.getTridasProjectType()) {
+				writer.element("type", type);
+			}
+			writer.endElement();
 		}
-		sw.append("</types>");
 		
 		// Note that this goes to another service and is a Performance Penalty
-		sw.append(getXMLElementString("ownerOrganizationId", getOwnerOrganizationId(dccdSB)));
+		if (isFieldRequested("ownerOrganizationId"))
+			writer.element("ownerOrganizationId", getOwnerOrganizationId(dccdSB));
 		// And this one goes to the data archive... a penalty...
-		sw.append(getXMLElementString("language", getProjectlanguage(dccdSB)));
+		if (isFieldRequested("language"))
+			writer.element("language", getProjectlanguage(dccdSB));
 	}
 
 	/**
 	 * Append location XML, but only when allowed
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendProjectPublicLocationAsXml(java.io.StringWriter sw,
+	protected void appendProjectPublicLocationAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
 		// NOTE also give location if object level is open to everyone (even
 		// when not logged in)!
@@ -194,7 +435,7 @@ public abstract class AbstractProjectResource extends AbstractResource {
 		Boolean isAllowedToViewLocation = ProjectPermissionLevel.OBJECT
 				.isPermittedBy(effectivelevel);
 		if (isAllowedToViewLocation) {
-			appendProjectLocationAsXml(sw, dccdSB);
+			appendProjectLocationAsXml(writer, dccdSB);
 		}
 	}
 
@@ -214,129 +455,132 @@ public abstract class AbstractProjectResource extends AbstractResource {
 	/**
 	 * Append the permission related information of the project
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendProjectPermissionAsXml(java.io.StringWriter sw,
+	protected void appendProjectPermissionAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
+		if (!isFieldRequested("permission"))
+			return;
+
 		// only the default level
-		sw.append("<permission>");
-		sw.append(getXMLElementString("defaultLevel", 
+		writer.startElement("permission");
+		writer.element("defaultLevel", 
 				//dccdSB.getPermissionDefaultLevel()));
-				MAP_PERMISSION_TO_ENTITYLEVEL.get(ProjectPermissionLevel.valueOf(dccdSB.getPermissionDefaultLevel())))); 
-		sw.append("</permission>");
+				MAP_PERMISSION_TO_ENTITYLEVEL.get(ProjectPermissionLevel.valueOf(dccdSB.getPermissionDefaultLevel()))); 
+		writer.endElement();
 	}
 	
 	/**
 	 * Append location XML
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendProjectLocationAsXml(java.io.StringWriter sw,
+	protected void appendProjectLocationAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
-		if (dccdSB.hasLatLng()) 
+		if (dccdSB.hasLatLng() && isFieldRequested("location")) 
 		{
 			// just append it, no WGS84 or EPSG indications, it's implicit
-			sw.append("<location>");
-			sw.append(getXMLElementString("lat", dccdSB.getLat().toString()));
-			sw.append(getXMLElementString("lng", dccdSB.getLng().toString()));
-			sw.append("</location>");
+			writer.startElement("location");
+			writer.element("lat", dccdSB.getLat().toString());
+			writer.element("lng", dccdSB.getLng().toString());
+			writer.endElement();
 		}
 	}
 	
 	/**
 	 * Append Taxon's, but only when allowed
 	 * 
-	 * @param sw
+	 * @param writer
 	 * @param dccdSB
 	 */
-	protected void appendProjectPublicTaxonsAsXml(java.io.StringWriter sw,
+	protected void appendProjectPublicTaxonsAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
 		ProjectPermissionLevel effectivelevel = ProjectPermissionLevel
 				.valueOf(dccdSB.getPermissionDefaultLevel());
 		Boolean isAllowedToViewTaxon = ProjectPermissionLevel.ELEMENT
 				.isPermittedBy(effectivelevel);
 		if (isAllowedToViewTaxon) {
-			appendProjectTaxonsAsXml(sw, dccdSB);
+			appendProjectTaxonsAsXml(writer, dccdSB);
 		}
 	}
 	
-	protected void appendProjectTaxonsAsXml(java.io.StringWriter sw,
+	protected void appendProjectTaxonsAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
-		if (dccdSB.hasTridasElementTaxon())
+		if (dccdSB.hasTridasElementTaxon() && isFieldRequested("taxons"))
 		{
 			// avoid duplicates
 			List<String> taxons = StringUtil.getUniqueStrings(dccdSB.getTridasElementTaxon());
 			
-			sw.append("<taxons>");
+			writer.startElement("taxons");
 			for(String taxon : taxons)
 			{
-				sw.append(getXMLElementString("taxon", taxon));
+				writer.element("taxon", taxon);
 			}
-			sw.append("</taxons>");
+			writer.endElement();
 		}
 	}
 	
 	/**
 	 * Append Object and elements Types, but only when allowed
 	 * 
-	 * @param sw
+	 * @param writer
 	 * @param dccdSB
 	 */
-	protected void appendProjectPublicTypesAsXml(java.io.StringWriter sw,
+	protected void appendProjectPublicTypesAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
 		ProjectPermissionLevel effectivelevel = ProjectPermissionLevel
 				.valueOf(dccdSB.getPermissionDefaultLevel());
 		Boolean isAllowedToViewType = ProjectPermissionLevel.ELEMENT
 				.isPermittedBy(effectivelevel);
 		if (isAllowedToViewType) {
-			appendProjectElementTypesAsXml(sw, dccdSB);
-			appendProjectObjectTypesAsXml(sw, dccdSB);
+			appendProjectElementTypesAsXml(writer, dccdSB);
+			appendProjectObjectTypesAsXml(writer, dccdSB);
 		} else {
 			// maybe only object types
 			Boolean isAllowedToViewObjectType = ProjectPermissionLevel.OBJECT
 					.isPermittedBy(effectivelevel);
 			if (isAllowedToViewObjectType) {
-				appendProjectObjectTypesAsXml(sw, dccdSB);
+				appendProjectObjectTypesAsXml(writer, dccdSB);
 			}
 		}
 	}
 	
-	protected void appendProjectElementTypesAsXml(java.io.StringWriter sw,
+	protected void appendProjectElementTypesAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
-		if (dccdSB.hasTridasElementType())
+		if (dccdSB.hasTridasElementType() && isFieldRequested("elementTypes"))
 		{
 			// avoid duplicates
 			List<String> types = StringUtil.getUniqueStrings(dccdSB.getTridasElementType());
 
-			sw.append("<elementTypes>");
+			writer.startElement("elementTypes");
 			for(String type : types)
 			{
-				sw.append(getXMLElementString("elementType", type));
+				writer.element("elementType", type);
 			}
-			sw.append("</elementTypes>");
+			writer.endElement();
 		}
 		// Note: what to do with normal and normalId ?
 	}
 	
-	protected void appendProjectObjectTypesAsXml(java.io.StringWriter sw,
+	protected void appendProjectObjectTypesAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
-		if (dccdSB.hasTridasObjectType())
+		if (dccdSB.hasTridasObjectType() && isFieldRequested("objectTypes"))
 		{
 			// avoid duplicates
 			List<String> types = StringUtil.getUniqueStrings(dccdSB.getTridasObjectType());
 
-			sw.append("<objectTypes>");
+			writer.startElement("objectTypes");
 			for(String type : types)
 			{
-				sw.append(getXMLElementString("objectType", type));
+				writer.element("objectType", type);
 			}
-			sw.append("</objectTypes>");
+			writer.endElement();
 		}
 		// Note: what to do with normal and normalId ?
 	}
@@ -344,12 +588,12 @@ public abstract class AbstractProjectResource extends AbstractResource {
 	/**
 	 * Append project description XML, but only when allowed
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendProjectPublicDescriptionAsXml(java.io.StringWriter sw,
+	protected void appendProjectPublicDescriptionAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
 		// NOTE also give description if project level is open to everyone (even
 		// when not logged in)!
@@ -359,41 +603,43 @@ public abstract class AbstractProjectResource extends AbstractResource {
 		Boolean isAllowedToViewDescription = ProjectPermissionLevel.PROJECT
 				.isPermittedBy(effectivelevel);
 		if (isAllowedToViewDescription) {
-			appendProjectDescriptionAsXml(sw, dccdSB);
+			appendProjectDescriptionAsXml(writer, dccdSB);
 		}
 	}
 	
-	protected void appendProjectDescriptionAsXml(java.io.StringWriter sw,
+	protected void appendProjectDescriptionAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {	
-		if (dccdSB.hasTridasProjectDescription())
-			sw.append(getXMLElementString("description", dccdSB.getTridasProjectDescription()));
+		if (dccdSB.hasTridasProjectDescription() && isFieldRequested("description"))
+			writer.element("description", dccdSB.getTridasProjectDescription());
 	}
 	
 	/**
 	 * Append time range, but only when allowed
 	 * 
-	 * @param sw
+	 * @param writer
 	 * @param dccdSB
 	 */
-	protected void appendProjectPublicTimeRangeAsXml(java.io.StringWriter sw,
+	protected void appendProjectPublicTimeRangeAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
 		ProjectPermissionLevel effectivelevel = ProjectPermissionLevel
 				.valueOf(dccdSB.getPermissionDefaultLevel());
 		Boolean isAllowedToViewTimeRange = ProjectPermissionLevel.SERIES
 				.isPermittedBy(effectivelevel);
 		if (isAllowedToViewTimeRange) {
-			appendProjectTimeRangeAsXml(sw, dccdSB);
+			appendProjectTimeRangeAsXml(writer, dccdSB);
 		}
 	}
 	
 	/**
 	 * TimeRange (or Temporal Coverage)
 	 * 
-	 * @param sw
+	 * @param writer
 	 * @param dccdSB
 	 */
-	protected void appendProjectTimeRangeAsXml(java.io.StringWriter sw,
+	protected void appendProjectTimeRangeAsXml(DocumentWriter writer,
 			DccdSB dccdSB) {
+		if (!isFieldRequested("timeRange"))
+			return;
 		
 		// concat all the lists, but only non null elements
 		List<Integer> years = new ArrayList<Integer>();
@@ -444,19 +690,98 @@ public abstract class AbstractProjectResource extends AbstractResource {
 			
 			// firstDate = min
 			// lastDate = max
-			sw.append("<timeRange>");
-			sw.append(getXMLElementString("firstYear", min.toString()));
-			sw.append(getXMLElementString("lastYear", max.toString()));
-			sw.append("</timeRange>");
+			writer.startElement("timeRange");
+			writer.element("firstYear", min.toString());
+			writer.element("lastYear", max.toString());
+			writer.endElement();
 		}
 	}
 	
-	public static String getXMLElementString(final String name, final String value)
-	{
-		// NOTE the name is not escaped
-		return "<" + name + ">" + StringEscapeUtils.escapeXml(value) + "</" + name + ">";
+	/**
+	 * Start the lookups of the information that is not in the search results, 
+	 * like the organisation of the owner and the language of the projects. 
+	 * They run concurrently while the page is rendered, and a lookup that takes too long is left out. 
+	 * 
+	 * This is only done for the projects that are not in the ProjectSummaryCache, 
+	 * a page with only cached summaries is a copy of the cached fragments. 
+	 * The owners that are in the UserDirectoryCache are not looked up either.
+	 * 
+	 * @param searchResults
+	 */
+	protected void prefetchEnrichment(SearchResult<? extends DccdSB> searchResults) {
+		List<DccdSB> projects = new ArrayList<DccdSB>();
+		for (SearchHit<? extends DccdSB> hit : searchResults.getHits()) {
+			projects.add(hit.getData());
+		}
+		prefetchEnrichment(projects);
 	}
-	
+
+	/**
+	 * @param projects
+	 *            The projects of the page
+	 * @see #prefetchEnrichment(SearchResult)
+	 */
+	protected void prefetchEnrichment(List<? extends DccdSB> projects) {
+		EnrichmentExecutor executor = EnrichmentExecutor.getInstance();
+		lookupDeadline = System.currentTimeMillis() + EnrichmentExecutor.TIMEOUT_MILLIS;
+		pageSummaries.clear();
+		pageOwners.clear();
+		ownerLookups.clear();
+		languageLookups.clear();
+
+		ProjectSummaryCache summaryCache = ProjectSummaryCache.getInstance();
+		UserDirectoryCache userCache = UserDirectoryCache.getInstance();
+		for (DccdSB dccdSB : projects) {
+			if (getRequestedFields() == null) {
+				String key = ProjectSummaryCache.getKey(dccdSB);
+				if (!pageSummaries.containsKey(key))
+					pageSummaries.put(key, summaryCache.get(key));
+				if (pageSummaries.get(key) != null)
+					continue; // nothing to look up
+			}
+
+			final String ownerId = dccdSB.getOwnerId();
+			if (isFieldRequested("ownerOrganizationId") 
+					&& !pageOwners.containsKey(ownerId) && !ownerLookups.containsKey(ownerId)) {
+				DccdUser owner = userCache.get(ownerId);
+				if (owner != null) {
+					pageOwners.put(ownerId, owner);
+				} else {
+					ownerLookups.put(ownerId, executor.submit(new Callable<DccdUser>() {
+						public DccdUser call() throws UserServiceException {
+							return UserDirectoryCache.getInstance().getUser(ownerId);
+						}
+					}));
+				}
+			}
+
+			final String sid = dccdSB.getPid();
+			if (isFieldRequested("language") && !languageLookups.containsKey(sid)) {
+				languageLookups.put(sid, executor.submit(new Callable<String>() {
+					public String call() throws DataServiceException {
+						return ProjectAttributeStore.getInstance().getLanguage(sid);
+					}
+				}));
+			}
+		}
+	}
+
+	/**
+	 * @param lookup
+	 * @return The result, or null when the lookup failed or did not finish in time
+	 */
+	private <T> T getLookupResult(Future<T> lookup) {
+		try {
+			return EnrichmentExecutor.getResult(lookup, lookupDeadline);
+		} catch (TimeoutException e) {
+			enrichmentIncomplete = true;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			enrichmentIncomplete = true;
+		}
+		return null;
+	}
+
 	/**
 	 * get the user information from the user service to obtain the organisation id
 	 * 
@@ -467,12 +792,24 @@ public abstract class AbstractProjectResource extends AbstractResource {
 	 */
 	String getOwnerOrganizationId(DccdSB dccdSB) {
 		String id = "";
+		DccdUser owner = pageOwners.get(dccdSB.getOwnerId());
+		if (owner != null)
+			return owner.getOrganization();
+		Future<DccdUser> ownerLookup = ownerLookups.get(dccdSB.getOwnerId());
+		if (ownerLookup != null) {
+			// null when left out or not found
+			owner = getLookupResult(ownerLookup);
+			return owner == null ? id : owner.getOrganization();
+		}
+
 		try {
-			DccdUser user = DccdUserService.getService().getUserById(dccdSB.getOwnerId());
-			id = user.getOrganization();
+			DccdUser user = UserDirectoryCache.getInstance().getUser(dccdSB.getOwnerId());
+			if (user != null)
+				id = user.getOrganization();
 		} catch (UserServiceException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			enrichmentIncomplete = true;
 		}
 		return id;
 	}
@@ -480,15 +817,20 @@ public abstract class AbstractProjectResource extends AbstractResource {
 	String getProjectlanguage(DccdSB dccdSB)
 	{
 		String lang = "";
+
+		Future<String> languageLookup = languageLookups.get(dccdSB.getPid());
+		if (languageLookup != null) {
+			lang = getLookupResult(languageLookup);
+			return lang == null ? "" : lang;
+		}
 		
-		// Aye, get the project ....
-		
+		// Not from the project itself, that would load all of it from the store
 		try {
-			Project p = DccdDataService.getService().getProject(dccdSB.getPid());
-			lang = p.getTridasLanguage().getLanguage();
+			lang = ProjectAttributeStore.getInstance().getLanguage(dccdSB.getPid());
 		} catch (DataServiceException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			enrichmentIncomplete = true;
 		}
 		
 		return lang;
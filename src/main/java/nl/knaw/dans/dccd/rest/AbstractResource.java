@@ -15,31 +15,33 @@
  ******************************************************************************/
 package nl.knaw.dans.dccd.rest;
 
-import java.io.IOException;
 import java.util.List;
 
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Variant;
-import javax.ws.rs.core.Response.Status;
-import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLStreamException;
 
 import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
-import nl.knaw.dans.dccd.application.services.DccdUserService;
-import nl.knaw.dans.dccd.authn.UsernamePasswordAuthentication;
 import nl.knaw.dans.dccd.model.DccdUser;
 import nl.knaw.dans.dccd.model.DccdUser.Role;
-import nl.knaw.dans.dccd.rest.util.XmlToJsonConverter;
+import nl.knaw.dans.dccd.rest.auth.Authenticator;
+import nl.knaw.dans.dccd.rest.auth.DccdSecurityContext;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentStreamingOutput;
 
-import com.sun.jersey.core.util.Base64;
+import com.sun.jersey.api.core.HttpContext;
 
 public abstract class AbstractResource {
 	public static final int DEFAULT_LIST_LIMIT = 10;
 
+	public static final String APPLICATION_JSON_LINES = "application/x-ndjson";
+	public static final MediaType APPLICATION_JSON_LINES_TYPE = MediaType.valueOf(APPLICATION_JSON_LINES);
+
 	private String defaultMediaType = MediaType.APPLICATION_XML; // should be
 																	// XML or
 																	// JSON
@@ -73,6 +75,22 @@ public abstract class AbstractResource {
 	@Context
 	private UriInfo uriInfo;
 
+	/**
+	 * With each request the context is injected, 
+	 * it has the properties set by the request filters.
+	 */
+	@Context
+	private HttpContext httpContext;
+
+	/**
+	 * With each request the request is injected, 
+	 * needed for evaluating the preconditions of conditional requests.
+	 */
+	@Context
+	private Request request;
+
+	private DccdSecurityContext securityContext = null;
+
 	/**
 	 * Getter for the request headers.
 	 * 
@@ -82,6 +100,24 @@ public abstract class AbstractResource {
 		return requestHeaders;
 	}
 
+	/**
+	 * Getter for the URI info.
+	 * 
+	 * @return The URI info.
+	 */
+	protected UriInfo getUriInfo() {
+		return uriInfo;
+	}
+
+	/**
+	 * Getter for the request.
+	 * 
+	 * @return The request.
+	 */
+	protected Request getRequest() {
+		return request;
+	}
+
     /**
      * Setter for the request headers. This is practical for testing in
      * particular.
@@ -121,36 +157,59 @@ public abstract class AbstractResource {
 	}
 
 	/**
-	 * Translates a content String to a proper response.
+	 * JSON Lines (newline delimited JSON) is only used for streaming long lists
+	 * 
+	 * @return true if JSON Lines is requested
+	 */
+	protected boolean wantsJsonLines() {
+		List<MediaType> mediaTypes = getRequestHeaders()
+				.getAcceptableMediaTypes();
+		return mediaTypes.contains(APPLICATION_JSON_LINES_TYPE);
+	}
+
+	/**
+	 * Determine the media type of the response, from what is requested
 	 * 
-	 * @param content
-	 *            The content String.
+	 * @return XML or JSON (or the default media type), null if the requested media type is not supported
+	 */
+	protected String getResponseMediaType() {
+		if (wantsXml()) {
+			return MediaType.APPLICATION_XML;
+		} else if (wantsJson()) {
+			return MediaType.APPLICATION_JSON;
+		} else if (hasDefaultMediaType()) {
+			return getDefaultMediaType();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Renders the document to a proper response, 
+	 * it is streamed to the client as XML or JSON without building it in memory first.
+	 * 
+	 * @param renderer
+	 *            Constructs the document content.
 	 * @return The proper Response containing the content.
 	 */
-	protected Response responseXmlOrJson(String content) {
-		try {
-			if (wantsXml()) {
-				return Response.ok(content, MediaType.APPLICATION_XML).build();
-			} else if (wantsJson()) {
-				return Response.ok(XmlToJsonConverter.convert(content),
-						MediaType.APPLICATION_JSON).build();
-			} else {
-				if (hasDefaultMediaType()) {
-					return Response.ok(content, getDefaultMediaType()).build();
-				} else {
-					return Response.notAcceptable(variantXmlJson()).build();
-				}
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
-		} catch (XMLStreamException e) {
-			e.printStackTrace();
-			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
-		} catch (FactoryConfigurationError e) {
-			e.printStackTrace();
-			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+	protected Response responseXmlOrJson(DocumentRenderer renderer) {
+		return responseBuilderXmlOrJson(renderer).build();
+	}
+
+	/**
+	 * Same as responseXmlOrJson, but more can be added to the response
+	 * 
+	 * @param renderer
+	 *            Constructs the document content.
+	 * @return The builder for the response.
+	 */
+	protected ResponseBuilder responseBuilderXmlOrJson(DocumentRenderer renderer) {
+		String mediaType = getResponseMediaType();
+		if (mediaType == null) {
+			return Response.notAcceptable(variantXmlJson());
 		}
+		boolean json = MediaType.APPLICATION_JSON.equals(mediaType);
+		return Response.ok(new DocumentStreamingOutput(renderer, json), mediaType);
 	}
 
 	/**
@@ -164,45 +223,57 @@ public abstract class AbstractResource {
 	}
 
 	/*
-	 * Authentication can be refactored into a separate class could try make it
-	 * generic, so it can be with any User/Service?
+	 * Authentication is done by the Authenticator, 
+	 * once for each request by the AuthenticationFilter
 	 */
 
-	protected static final String AUTHENTICATION_TYPE = "Basic ";
-	protected static final String AUTHENTICATION_HDR_SEP = ":";
+	protected static final String AUTHENTICATION_TYPE = Authenticator.AUTHENTICATION_TYPE;
+	protected static final String AUTHENTICATION_HDR_SEP = Authenticator.AUTHENTICATION_HDR_SEP;
 
 	/**
-	 * Use information (credentials) in request header to authenticate the user
+	 * Get the result of the authentication done by the AuthenticationFilter for this request
+	 * 
+	 * @return The security context, null if the filter did not authenticate the request
+	 */
+	protected DccdSecurityContext getSecurityContext() {
+		if (securityContext == null && httpContext != null) {
+			Object context = httpContext.getProperties().get(DccdSecurityContext.PROPERTY_NAME);
+			if (context instanceof DccdSecurityContext)
+				securityContext = (DccdSecurityContext) context;
+		}
+		return securityContext;
+	}
+
+    /**
+     * Setter for the security context. This is practical for testing in
+     * particular.
+     * 
+     * @param securityContext
+     *            The security context.
+     */
+	protected void setSecurityContext(DccdSecurityContext securityContext) {
+		this.securityContext = securityContext;
+	}
+
+	/**
+	 * Use information (credentials) in request header to authenticate the user, 
+	 * normally this was already done once for the request by the AuthenticationFilter
 	 * 
 	 * @return Authenticated user, but null if authentication failed
 	 * @throws ServiceException
 	 */
 	protected DccdUser authenticate() throws ServiceException {
-		DccdUser user = null;
+		DccdSecurityContext context = getSecurityContext();
+		if (context != null)
+			return context.getUser();
+
+		String authHeader = null;
 		List<String> authHeaders = requestHeaders
 				.getRequestHeader(HttpHeaders.AUTHORIZATION);
 		if (authHeaders != null && !authHeaders.isEmpty()) {
-			String authHeader = authHeaders.get(0);
-			if (authHeader.startsWith(AUTHENTICATION_TYPE)) {
-				String decodedAuthHeader = Base64.base64Decode(authHeader
-						.substring(AUTHENTICATION_TYPE.length()));
-
-				if (decodedAuthHeader.contains(AUTHENTICATION_HDR_SEP)) {
-					String[] auth = decodedAuthHeader
-							.split(AUTHENTICATION_HDR_SEP);
-					String username = auth[0];
-					String password = auth[1];
-
-					UsernamePasswordAuthentication authentication = DccdUserService
-							.getService().newUsernamePasswordAuthentication();
-					authentication.setUserId(username);
-					authentication.setCredentials(password);
-					DccdUserService.getService().authenticate(authentication);
-					user = (DccdUser) authentication.getUser();
-				}
-			}
+			authHeader = authHeaders.get(0);
 		}
-		return user;
+		return Authenticator.authenticate(authHeader);
 	}
 	
 	/**
@@ -212,7 +283,13 @@ public abstract class AbstractResource {
 	 */
 	protected boolean isRequestByAdmin() 
 	{
+		DccdSecurityContext context = getSecurityContext();
 		try {
+			if (context != null) {
+				// will throw if authentication failed
+				context.getUser();
+				return context.isAdmin();
+			}
 			DccdUser requestingUser = authenticate();
 			return isAdmin(requestingUser);
 		} catch (ServiceException eAuth) {
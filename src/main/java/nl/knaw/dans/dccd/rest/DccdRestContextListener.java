@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.xml.bind.JAXBException;
+
+import nl.knaw.dans.dccd.rest.archival.ImportJobService;
+import nl.knaw.dans.dccd.rest.archival.ProjectAttributeStore;
+import nl.knaw.dans.dccd.rest.tridas.TridasMarshallerPool;
+import nl.knaw.dans.dccd.rest.util.EnrichmentExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares the application wide resources when the webapp is deployed,
+ * so the first requests don't have to wait for it.
+ *
+ * @author paulboon
+ *
+ */
+public class DccdRestContextListener implements ServletContextListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DccdRestContextListener.class);
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		LOGGER.info("Creating the TRiDaS JAXB context...");
+		try {
+			TridasMarshallerPool.warmUp();
+			LOGGER.info("done");
+		} catch (JAXBException e) {
+			// not fatal, the first request will try again
+			LOGGER.error("Failed to create the TRiDaS JAXB context", e);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		// make sure the latest changes are saved
+		ProjectAttributeStore.getInstance().shutdown();
+		EnrichmentExecutor.getInstance().shutdown();
+		ImportJobService.getInstance().shutdown();
+	}
+}
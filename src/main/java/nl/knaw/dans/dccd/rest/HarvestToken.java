@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import nl.knaw.dans.common.lang.search.SortOrder;
+import nl.knaw.dans.dccd.search.DccdProjectSB;
+
+import org.joda.time.DateTime;
+
+/**
+ * Resumption token of a harvest; the period that is harvested and the position in it. 
+ * 
+ * The end of the period is fixed when the harvest starts, 
+ * so projects that are (re)published during the harvest are not returned twice or skipped, 
+ * they are in the next harvest starting from the end of this one. 
+ * The projects are harvested in the order of their last change (and sid), oldest first.
+ * 
+ * @author paulboon
+ *
+ */
+public class HarvestToken {
+	private static final String FIELD_SEP = "\n";
+
+	private final DateTime from;
+	private final DateTime until;
+	private final ListCursor cursor;
+
+	/**
+	 * @param from
+	 *            Start of the period, null for the beginning
+	 * @param until
+	 *            End of the period
+	 * @param cursor
+	 *            Position in the period
+	 */
+	public HarvestToken(final DateTime from, final DateTime until, final ListCursor cursor) {
+		this.from = from;
+		this.until = until;
+		this.cursor = cursor;
+	}
+
+	/**
+	 * The first page of the harvest of a period
+	 * 
+	 * @param from
+	 *            Start of the period, null for the beginning
+	 * @param until
+	 *            End of the period
+	 * @return The token
+	 */
+	public static HarvestToken start(final DateTime from, final DateTime until) {
+		return new HarvestToken(from, until, ListCursor.parse(ListCursor.START, 
+				DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE, SortOrder.ASC));
+	}
+
+	/**
+	 * @param token
+	 *            The resumption token from the client
+	 * @return The token
+	 * @throws IllegalArgumentException
+	 *             When it is not a valid token
+	 */
+	public static HarvestToken parse(final String token) throws IllegalArgumentException {
+		String[] fields = ListCursor.decode(token).split(FIELD_SEP, -1);
+		if (fields.length != 3)
+			throw new IllegalArgumentException("Invalid resumption token: " + token);
+
+		try {
+			DateTime from = fields[0].isEmpty() ? null : new DateTime(Long.parseLong(fields[0]));
+			DateTime until = new DateTime(Long.parseLong(fields[1]));
+			ListCursor cursor = ListCursor.parse(fields[2], DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE, SortOrder.ASC);
+			return new HarvestToken(from, until, cursor);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid resumption token: " + token);
+		}
+	}
+
+	/**
+	 * @return The token for the client
+	 */
+	public String format() {
+		return ListCursor.encode((from == null ? "" : String.valueOf(from.getMillis())) 
+				+ FIELD_SEP + until.getMillis() 
+				+ FIELD_SEP + cursor.format());
+	}
+
+	/**
+	 * @param next
+	 *            The position of the next page
+	 * @return The token for the next page of this harvest
+	 */
+	public HarvestToken next(final ListCursor next) {
+		return new HarvestToken(from, until, next);
+	}
+
+	public DateTime getFrom() {
+		return from;
+	}
+
+	public DateTime getUntil() {
+		return until;
+	}
+
+	public ListCursor getCursor() {
+		return cursor;
+	}
+}
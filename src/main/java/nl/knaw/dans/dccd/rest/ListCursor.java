@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.knaw.dans.common.lang.search.SearchHit;
+import nl.knaw.dans.common.lang.search.SearchResult;
+import nl.knaw.dans.common.lang.search.SortOrder;
+import nl.knaw.dans.common.lang.search.simple.SimpleField;
+import nl.knaw.dans.common.lang.search.simple.SimpleSearchRequest;
+import nl.knaw.dans.common.lang.util.Range;
+import nl.knaw.dans.dccd.rest.ProjectResource.DateTimeWrapper;
+import nl.knaw.dans.dccd.search.DccdProjectSB;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+import org.joda.time.DateTime;
+
+import com.sun.jersey.core.util.Base64;
+
+/**
+ * Position in a sorted result list, for keyset (cursor) paging.
+ * 
+ * Instead of skipping 'offset' results the next page is requested with a filter 
+ * starting at the sort value of the last result that was returned, 
+ * so deep pages cost the same as the first page and 
+ * publishing projects while paging doesn't shift the results.
+ * 
+ * The sort values need not be unique (projects can have the same last change), 
+ * the cursor therefore also has the number of results with the last sort value that were already returned; 
+ * the search must use the same (stable) ordering for those. 
+ * That number is bounded by MAX_SKIP, because those results are fetched again for every page. 
+ * Objects are sorted on their own (unique) id, so there are no ties. 
+ * 
+ * Supported sorting: on DccdProjectSB.PID_NAME, DccdSB.ID_NAME and DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE, 
+ * by default ascending on the ids and descending on the last change (recent first). 
+ * 
+ * The filter makes the total of the search the number of remaining results, 
+ * so the total of the first page is kept in the cursor. 
+ * 
+ * The token for the client is opaque (URL safe Base64). 
+ * 
+ * @author paulboon
+ *
+ */
+public class ListCursor {
+	/** Token for requesting the first page */
+	public static final String START = "*";
+	/** Maximum number of results with the same sort value that can be paged through */
+	public static final int MAX_SKIP = Integer.getInteger("dccd.rest.cursor.maxSkip", 1000);
+
+	private static final String CHARSET = "UTF-8";
+	private static final String FIELD_SEP = "\n";
+
+	private final String field;
+	private final SortOrder order;
+	private final String value;
+	private final int skip;
+	private final long total;
+
+	private ListCursor(final String field, final SortOrder order, final String value, final int skip, 
+			final long total) {
+		this.field = field;
+		this.order = order;
+		this.value = value;
+		this.skip = skip;
+		this.total = total;
+	}
+
+	/**
+	 * @param token
+	 *            The cursor token from the client, START for the first page
+	 * @param field
+	 *            The field the results are sorted on, in the default order
+	 * @return The cursor
+	 * @throws IllegalArgumentException
+	 *             When the token is not valid, or was for a list with another sorting
+	 */
+	public static ListCursor parse(final String token, final String field) throws IllegalArgumentException {
+		SortOrder order = DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE.equals(field) ? SortOrder.DESC : SortOrder.ASC;
+		return parse(token, field, order);
+	}
+
+	/**
+	 * @param token
+	 *            The cursor token from the client, START for the first page
+	 * @param field
+	 *            The field the results are sorted on
+	 * @param order
+	 *            The order of the sorting
+	 * @return The cursor
+	 * @throws IllegalArgumentException
+	 *             When the token is not valid, or was for a list with another sorting
+	 */
+	public static ListCursor parse(final String token, final String field, final SortOrder order) 
+			throws IllegalArgumentException {
+		checkField(field);
+		if (START.equals(token))
+			return new ListCursor(field, order, null, 0, 0);
+
+		String[] fields = decode(token).split(FIELD_SEP, -1);
+		if (fields.length != 5 || !field.equals(fields[0]) || !order.toString().equals(fields[1]))
+			throw new IllegalArgumentException("Invalid cursor: " + token);
+
+		int skip;
+		long total;
+		try {
+			skip = Integer.parseInt(fields[3]);
+			total = Long.parseLong(fields[4]);
+			if (DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE.equals(field))
+				Long.parseLong(fields[2]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + token);
+		}
+		if (skip < 0 || skip > MAX_SKIP || total < 0)
+			throw new IllegalArgumentException("Invalid cursor: " + token);
+
+		return new ListCursor(field, order, fields[2], skip, total);
+	}
+
+	private static void checkField(final String field) {
+		if (!DccdProjectSB.PID_NAME.equals(field) && !DccdSB.ID_NAME.equals(field)
+				&& !DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE.equals(field))
+			throw new IllegalArgumentException("Cursor not supported for sorting on: " + field);
+	}
+
+	/**
+	 * @return The token for the client
+	 */
+	public String format() {
+		if (isStart())
+			return START;
+		return encode(field + FIELD_SEP + order + FIELD_SEP + value + FIELD_SEP + skip + FIELD_SEP + total);
+	}
+
+	/**
+	 * @param payload
+	 * @return The payload as URL safe Base64, without padding
+	 */
+	static String encode(final String payload) {
+		try {
+			String base64 = new String(Base64.encode(payload.getBytes(CHARSET)), "US-ASCII");
+			return base64.replace('+', '-').replace('/', '_').replace("=", "");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param token
+	 * @return The payload of the token
+	 * @throws IllegalArgumentException
+	 *             When the token is not URL safe Base64
+	 */
+	static String decode(final String token) throws IllegalArgumentException {
+		try {
+			String base64 = token.replace('-', '+').replace('_', '/');
+			while (base64.length() % 4 != 0)
+				base64 += "=";
+			return new String(Base64.decode(base64), CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid token: " + token);
+		}
+	}
+
+	public boolean isStart() {
+		return value == null;
+	}
+
+	/**
+	 * Restrict the request to the results from this cursor on. 
+	 * The request must already be sorted on the field of the cursor.
+	 * 
+	 * @param request
+	 * @param limit
+	 *            The number of results for the page
+	 */
+	public void applyTo(SimpleSearchRequest request, final int limit) {
+		request.setOffset(0);
+		// the results we already had are also returned
+		request.setLimit((int) Math.min((long) limit + skip, Integer.MAX_VALUE));
+
+		if (isStart())
+			return;
+
+		// range boundaries are inclusive
+		boolean descending = order == SortOrder.DESC;
+		if (!DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE.equals(field)) {
+			SimpleField<Range<String>> idField = new SimpleField<Range<String>>(field);
+			idField.setValue(descending ? new Range<String>(null, value) : new Range<String>(value, null));
+			request.addFilterQuery(idField);
+		} else {
+			DateTimeWrapper lastChange = new DateTimeWrapper(new DateTime(Long.parseLong(value)));
+			SimpleField<Range<DateTimeWrapper>> lastChangeField = new SimpleField<Range<DateTimeWrapper>>(field);
+			lastChangeField.setValue(descending 
+					? new Range<DateTimeWrapper>(null, lastChange) 
+					: new Range<DateTimeWrapper>(lastChange, null));
+			request.addFilterQuery(lastChangeField);
+		}
+	}
+
+	/**
+	 * Get the page from the results of a request with this cursor applied
+	 * 
+	 * @param searchResults
+	 * @param limit
+	 *            The number of results for the page
+	 * @return The page
+	 */
+	public Page getPage(final SearchResult<? extends DccdSB> searchResults, final int limit) {
+		// without a filter it is the total of the list
+		long listTotal = isStart() ? searchResults.getTotalHits() : total;
+		List<SearchHit<? extends DccdSB>> hits = new ArrayList<SearchHit<? extends DccdSB>>();
+		int skipped = 0;
+		for (SearchHit<? extends DccdSB> hit : searchResults.getHits()) {
+			// only the results with the boundary value were returned before, 
+			// when one of them has gone the next result should not be dropped
+			if (skipped < skip && value != null && value.equals(getSortValue(hit.getData()))) {
+				skipped++;
+				continue;
+			}
+			if (hits.size() == limit)
+				break;
+			hits.add(hit);
+		}
+
+		ListCursor next = null;
+		if (!hits.isEmpty() && searchResults.getTotalHits() > skipped + hits.size()) {
+			String lastValue = getSortValue(hits.get(hits.size() - 1).getData());
+			if (lastValue != null) {
+				int lastSkip = 0;
+				for (int i = hits.size() - 1; i >= 0 && lastValue.equals(getSortValue(hits.get(i).getData())); i--)
+					lastSkip++;
+				if (lastSkip == hits.size() && lastValue.equals(value)) {
+					// still the same value as on the previous page
+					lastSkip += skipped;
+				}
+				if (lastSkip > MAX_SKIP)
+					throw new IllegalStateException("More than " + MAX_SKIP + " results with the same " + field);
+				next = new ListCursor(field, order, lastValue, lastSkip, listTotal);
+			}
+		}
+		return new Page(hits, next, listTotal);
+	}
+
+	private String getSortValue(final DccdSB dccdSB) {
+		if (DccdProjectSB.PID_NAME.equals(field))
+			return dccdSB.getPid();
+		if (DccdSB.ID_NAME.equals(field))
+			return dccdSB.getId();
+
+		DateTime lastChange = dccdSB.getAdministrativeStateLastChange();
+		return lastChange == null ? null : String.valueOf(lastChange.getMillis());
+	}
+
+	/**
+	 * The results of a page and the cursor for the following page
+	 */
+	public static class Page {
+		private final List<SearchHit<? extends DccdSB>> hits;
+		private final ListCursor next;
+		private final long total;
+
+		private Page(final List<SearchHit<? extends DccdSB>> hits, final ListCursor next, final long total) {
+			this.hits = hits;
+			this.next = next;
+			this.total = total;
+		}
+
+		public List<SearchHit<? extends DccdSB>> getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return The cursor, or null when this was the last page
+		 */
+		public ListCursor getNext() {
+			return next;
+		}
+
+		/**
+		 * @return The number of results in the whole list, as it was when the first page was requested
+		 */
+		public long getTotal() {
+			return total;
+		}
+	}
+}
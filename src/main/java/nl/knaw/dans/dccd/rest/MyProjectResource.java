@@ -18,9 +18,10 @@ package nl.knaw.dans.dccd.rest;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -34,6 +35,9 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,7 +59,12 @@ import nl.knaw.dans.dccd.model.DccdUser;
 import nl.knaw.dans.dccd.model.Project;
 import nl.knaw.dans.dccd.rest.archival.FileExtractor;
 import nl.knaw.dans.dccd.rest.archival.DccdProjectImporter;
-import nl.knaw.dans.dccd.rest.util.XmlStringUtil;
+import nl.knaw.dans.dccd.rest.archival.ImportJob;
+import nl.knaw.dans.dccd.rest.archival.ImportJobService;
+import nl.knaw.dans.dccd.rest.archival.ProjectAttributeStore;
+import nl.knaw.dans.dccd.rest.cache.ProjectCache;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
 import nl.knaw.dans.dccd.search.DccdProjectSB;
 import nl.knaw.dans.dccd.search.DccdSB;
 
@@ -90,6 +99,8 @@ public class MyProjectResource extends AbstractProjectResource {
 			project = DccdDataService.getService().getProject(id);
 			// test if it has draft status?
 			DccdDataService.getService().deleteProject(project, user);
+			ProjectAttributeStore.getInstance().removeProject(id);
+			ProjectCache.getInstance().invalidate(id);
 		} catch (DataServiceException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -139,6 +150,8 @@ public class MyProjectResource extends AbstractProjectResource {
 			File projectFolder = FileExtractor.getDataFolder(zipFolder);
 			
 			output = DccdProjectImporter.importProject(projectFolder, user.getId());
+			// in case an earlier version of it is cached
+			ProjectCache.getInstance().invalidate(output);
 			
 			
 		} catch (IOException e) {
@@ -155,6 +168,99 @@ public class MyProjectResource extends AbstractProjectResource {
 		// TODO make the result structured; XML or JSON
 		return Response.status(200).entity(output).build();
 	}
+
+	/**
+	 * Upload a project just like uploadFile, but it is imported in the background. 
+	 * The response is '202 Accepted' with the location of the import job, 
+	 * which tells when the project is imported and what its sid is.
+	 * 
+	 * curl -u normaltestuser:testtest -i -F file=@test.zip http://localhost:8080/dccd-rest/rest/myproject/import
+	 * 
+	 * @param uploadedInputStream
+	 * @return The response
+	 */
+	@POST
+	@Path("/import")
+	@Consumes(MediaType.MULTIPART_FORM_DATA)
+	public Response importFile(@FormDataParam("file") InputStream uploadedInputStream) {
+		// authenticate user
+		DccdUser user = null;
+		try {
+			user = authenticate();
+			if (user == null)
+				return Response.status(Status.UNAUTHORIZED).build();
+		} catch (ServiceException e1) {
+			e1.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+
+		ImportJob job;
+		try {
+			job = ImportJobService.getInstance().submit(uploadedInputStream, user.getId());
+		} catch (RejectedExecutionException e) {
+			// too busy, try again later
+			return Response.status(Status.SERVICE_UNAVAILABLE).build();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+
+		URI location = getUriInfo().getAbsolutePathBuilder().path(job.getId()).build();
+		return responseBuilderXmlOrJson(getImportJobAsXml(job))
+				.status(Status.ACCEPTED)
+				.location(location)
+				.build();
+	}
+
+	/**
+	 * The state of an import, only for the user that uploaded the project
+	 * 
+	 * @param jobId
+	 * @return The response
+	 */
+	@GET
+	@Path("/import/{jobId}")
+	public Response getImportJob(@PathParam("jobId") String jobId) {
+		// authenticate user
+		DccdUser user = null;
+		try {
+			user = authenticate();
+			if (user == null)
+				return Response.status(Status.UNAUTHORIZED).build();
+		} catch (ServiceException e1) {
+			e1.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+
+		ImportJob job = ImportJobService.getInstance().getJob(jobId);
+		if (job == null || !(job.getUserId().equals(user.getId()) || isAdmin(user)))
+			return Response.status(Status.NOT_FOUND).build();
+
+		return responseXmlOrJson(getImportJobAsXml(job));
+	}
+
+	private DocumentRenderer getImportJobAsXml(final ImportJob job) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				DateTimeFormatter fmt = ISODateTimeFormat.dateTime().withZone(DateTimeZone.UTC);
+
+				writer.startElement("importJob");
+				writer.element("id", job.getId());
+				writer.element("state", job.getState().toString());
+				writer.elementOptional("stage", job.getStage());
+				writer.element("created", fmt.print(job.getCreated()));
+				if (job.getStarted() != 0)
+					writer.element("started", fmt.print(job.getStarted()));
+				if (job.getFinished() != 0) {
+					writer.element("finished", fmt.print(job.getFinished()));
+					writer.element("durationMillis", String.valueOf(job.getFinished() - job.getStarted()));
+				}
+				writer.elementOptional("sid", job.getSid());
+				writer.elementOptional("error", job.getError());
+				writer.endElement();
+			}
+		};
+	}
 	
 	/**
 	 * List the projects with sid's
@@ -162,13 +268,16 @@ public class MyProjectResource extends AbstractProjectResource {
 	 * 
 	 * @param offset
 	 * @param limit
+	 * @param cursorStr
+	 *            Use keyset paging instead of the offset
 	 * @return
 	 */
 	@GET
 	//@Path("/")
 	public Response getProjects(
 	           @QueryParam(OFFSET_PARAM) @DefaultValue("0") int offset,
-	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit) {
+	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit,
+	           @QueryParam(CURSOR_PARAM) String cursorStr) {
 		// authenticate user
 		DccdUser user = null;
 		try {
@@ -188,6 +297,17 @@ public class MyProjectResource extends AbstractProjectResource {
 		// Show Project and not the standard Object result
 		request.addFilterBean(DccdProjectSB.class);
 		request.addSortField(new SimpleSortField(DccdProjectSB.PID_NAME, SortOrder.ASC));
+
+		ListCursor cursor = null;
+		try {
+			cursor = getCursor(cursorStr, DccdProjectSB.PID_NAME);
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+		if (cursor != null) {
+			cursor.applyTo(request, limit);
+			offset = 0;
+		}
 	
 		// make sure its of the owner
     	// restrict results to the current user as owner
@@ -203,7 +323,8 @@ public class MyProjectResource extends AbstractProjectResource {
 			//return Response.status(Status.OK)
 			//		.entity(getProjectListSearchResultAsXml(searchResults, offset, limit))
 			//		.build();
-			return responseXmlOrJson(getProjectListSearchResultAsXml(searchResults, offset, limit, user));
+			ListCursor.Page page = cursor == null ? null : cursor.getPage(searchResults, limit);
+			return responseXmlOrJson(getProjectListSearchResultAsXml(searchResults, offset, limit, user, page));
 		} catch (SearchServiceException e) {
 			e.printStackTrace();
 			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -254,7 +375,7 @@ public class MyProjectResource extends AbstractProjectResource {
 			} else {
 				DccdSB dccdSB = searchResults.getHits().get(0).getData();
 				//return Response.status(Status.OK).entity(getProjectSearchResultAsXml(dccdSB)).build();
-				return responseXmlOrJson(getProjectSearchResultAsXml(dccdSB, user));
+				return responseProjectXmlOrJson(dccdSB, user, getProjectSearchResultAsXml(dccdSB, user));
 			}
 		} catch (SearchServiceException e) {
 			e.printStackTrace();
@@ -264,52 +385,52 @@ public class MyProjectResource extends AbstractProjectResource {
 	}
 	
 	/** 
-	 * Construct search result information as XML String
+	 * Construct search result information as XML (or JSON) document
 	 * 
 	 * @param dccdSB
 	 *            search result
 	 */
-	private String getProjectSearchResultAsXml(DccdSB dccdSB, DccdUser user) {
-		java.io.StringWriter sw = new StringWriter();
-		
-		sw.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"); // XML instruction
-		sw.append("<project>");
-		appendSearchResultDataAsXml(sw, dccdSB, user);
-		sw.append("</project>");
-
-		return sw.toString();
+	private DocumentRenderer getProjectSearchResultAsXml(final DccdSB dccdSB, final DccdUser user) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				writer.startElement("project");
+				appendSearchResultDataAsXml(writer, dccdSB, user);
+				writer.endElement();
+			}
+		};
 	}
 	
 	/**
 	 * Append project XML
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendSearchResultDataAsXml(java.io.StringWriter sw, DccdSB dccdSB, DccdUser requestingUser) {
-		appendProjectPublicDataAsXml(sw, dccdSB);
+	protected void appendSearchResultDataAsXml(DocumentWriter writer, DccdSB dccdSB, DccdUser requestingUser) {
+		appendProjectPublicDataAsXml(writer, dccdSB);
 		
 		// status is interesting for MyProjects
-		sw.append(getXMLElementString("state", dccdSB.getAdministrativeState()));
+		if (isFieldRequested("state"))
+			writer.element("state", dccdSB.getAdministrativeState());
 		
 		// permission
-		appendProjectPermissionAsXml(sw, dccdSB);
+		appendProjectPermissionAsXml(writer, dccdSB);
 		
-		if (isAdmin(requestingUser)) {
-			sw.append(XmlStringUtil.getXMLElementString("state", dccdSB.getAdministrativeState().toString()));
+		if (isAdmin(requestingUser) && isFieldRequested("state")) {
+			writer.element("state", dccdSB.getAdministrativeState().toString());
 		}
 		
 		// always show location; it's our own data!
-		appendProjectLocationAsXml(sw, dccdSB);
+		appendProjectLocationAsXml(writer, dccdSB);
 		// and timerange as well
-		appendProjectTimeRangeAsXml(sw, dccdSB);
+		appendProjectTimeRangeAsXml(writer, dccdSB);
 		
-		appendProjectDescriptionAsXml(sw, dccdSB);
-		appendProjectTaxonsAsXml(sw, dccdSB);
-		appendProjectObjectTypesAsXml(sw, dccdSB);
-		appendProjectElementTypesAsXml(sw, dccdSB);
+		appendProjectDescriptionAsXml(writer, dccdSB);
+		appendProjectTaxonsAsXml(writer, dccdSB);
+		appendProjectObjectTypesAsXml(writer, dccdSB);
+		appendProjectElementTypesAsXml(writer, dccdSB);
 	}
 	
 	
@@ -1,6 +1,5 @@
 package nl.knaw.dans.dccd.rest;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,7 +15,8 @@ import nl.knaw.dans.dccd.application.services.UserServiceException;
 import nl.knaw.dans.dccd.model.DccdOrganisation;
 import nl.knaw.dans.dccd.model.DccdUser;
 import nl.knaw.dans.dccd.model.DccdUser.Role;
-import nl.knaw.dans.dccd.rest.util.XmlStringUtil;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
 
 @Path("/organisation")
 public class OrganisationResource extends AbstractResource {
@@ -44,25 +44,26 @@ public class OrganisationResource extends AbstractResource {
 			}
 			
 			// construct the response
-			java.io.StringWriter sw = new StringWriter();
-			
-			sw.append(XmlStringUtil.XML_INSTRUCTION_STR);
-			sw.append("<organisations>");
-			for (DccdOrganisation organisation : organisations) {
-				sw.append("<organisation>");
-				sw.append(XmlStringUtil.getXMLElementString("id", organisation.getId()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("city", organisation.getCity()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("country", organisation.getCountry()));
-				
-				if (requestByAdmin) 
-				{
-					sw.append(XmlStringUtil.getXMLElementString("accountState", organisation.getState().toString())); //account state and not a location
+			final List<DccdOrganisation> resultOrganisations = organisations;
+			final boolean showAccountState = requestByAdmin;
+			return responseXmlOrJson(new DocumentRenderer() {
+				public void render(DocumentWriter writer) {
+					writer.startElement("organisations");
+					for (DccdOrganisation organisation : resultOrganisations) {
+						writer.startElement("organisation");
+						writer.element("id", organisation.getId());
+						writer.elementOptional("city", organisation.getCity());
+						writer.elementOptional("country", organisation.getCountry());
+						
+						if (showAccountState) 
+						{
+							writer.element("accountState", organisation.getState().toString()); //account state and not a location
+						}
+						writer.endElement();
+					}
+					writer.endElement();
 				}
-				sw.append("</organisation>");
-			}
-			sw.append("</organisations>");
-			
-			return responseXmlOrJson(sw.toString());
+			});
 			
 		} catch (UserServiceException e) {			
 			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -91,25 +92,24 @@ public class OrganisationResource extends AbstractResource {
 		}
 		
 		try {
-			DccdOrganisation organisation = DccdUserService.getService().getOrganisationById(oid);
+			final DccdOrganisation organisation = DccdUserService.getService().getOrganisationById(oid);
 			if (organisation != null) {
 				// construct the response
-				java.io.StringWriter sw = new StringWriter();
-				
-				sw.append(XmlStringUtil.XML_INSTRUCTION_STR);
-				sw.append("<organisation>");
-				sw.append(XmlStringUtil.getXMLElementString("id", organisation.getId()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("city", organisation.getCity()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("country", organisation.getCountry()));
-				
-				// more details
-				sw.append(XmlStringUtil.getXMLElementStringOptional("address", organisation.getAddress()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("postalcode", organisation.getPostalCode()));
-				sw.append(XmlStringUtil.getXMLElementString("accountState", organisation.getState().toString())); //account state and not a location
-				
-				sw.append("</organisation>");
-				
-				return responseXmlOrJson(sw.toString());
+				return responseXmlOrJson(new DocumentRenderer() {
+					public void render(DocumentWriter writer) {
+						writer.startElement("organisation");
+						writer.element("id", organisation.getId());
+						writer.elementOptional("city", organisation.getCity());
+						writer.elementOptional("country", organisation.getCountry());
+						
+						// more details
+						writer.elementOptional("address", organisation.getAddress());
+						writer.elementOptional("postalcode", organisation.getPostalCode());
+						writer.element("accountState", organisation.getState().toString()); //account state and not a location
+						
+						writer.endElement();
+					}
+				});
 			} else {
 				return Response.status(Status.NOT_FOUND).build();
 			}
@@ -15,8 +15,11 @@
  ******************************************************************************/
 package nl.knaw.dans.dccd.rest;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -26,18 +29,23 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import nl.knaw.dans.common.lang.dataset.DatasetState;
+import nl.knaw.dans.common.lang.search.FacetField;
+import nl.knaw.dans.common.lang.search.FacetValue;
 import nl.knaw.dans.common.lang.search.SearchHit;
 import nl.knaw.dans.common.lang.search.SearchRequest;
 import nl.knaw.dans.common.lang.search.SearchResult;
+import nl.knaw.dans.common.lang.search.SortOrder;
 import nl.knaw.dans.common.lang.search.simple.CombinedOptionalField;
 import nl.knaw.dans.common.lang.search.simple.SimpleField;
 import nl.knaw.dans.common.lang.search.simple.SimpleSearchRequest;
+import nl.knaw.dans.common.lang.search.simple.SimpleSortField;
 import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
 import nl.knaw.dans.common.lang.util.Range;
 import nl.knaw.dans.dccd.application.services.DccdSearchService;
 import nl.knaw.dans.dccd.application.services.SearchServiceException;
 import nl.knaw.dans.dccd.model.DccdUser;
-import nl.knaw.dans.dccd.rest.util.XmlStringUtil;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
 import nl.knaw.dans.dccd.search.DccdObjectSB;
 import nl.knaw.dans.dccd.search.DccdProjectSB;
 import nl.knaw.dans.dccd.search.DccdSB;
@@ -50,6 +58,20 @@ import nl.knaw.dans.dccd.search.DccdSB;
  */
 @Path("/object")
 public class ProjectObjectResource extends AbstractProjectResource {
+	public static final String FACETS_PARAM = "facets";
+
+	/**
+	 * The name of the facet in the response and the search field it counts
+	 */
+	@SuppressWarnings("serial")
+	public static final Map<String, String> FACET_FIELDS = 
+			Collections.unmodifiableMap(new LinkedHashMap<String, String>() {{
+				put("taxon", DccdSB.TRIDAS_ELEMENT_TAXON_NAME);
+				put("objectType", DccdSB.TRIDAS_OBJECT_TYPE_NAME);
+				put("elementType", DccdSB.TRIDAS_ELEMENT_TYPE_NAME);
+				put("category", DccdSB.TRIDAS_PROJECT_CATEGORY_NAME);
+				put("laboratory", DccdSB.TRIDAS_PROJECT_LABORATORY_NAME_NAME);
+			}});
 	
 	/**
 	 * Produce a paged result list of object (and its parent project) information
@@ -74,6 +96,10 @@ public class ProjectObjectResource extends AbstractProjectResource {
 	 * @param pithYearTo
 	 * @param offset
 	 * @param limit A response containing the paged list of results
+	 * @param cursorStr
+	 *            Use keyset paging instead of the offset, the objects are then sorted on their id
+	 * @param facets
+	 *            Only the total and the number of objects per value of the FACET_FIELDS, without any results
 	 * @return
 	 */
 	@SuppressWarnings("serial")
@@ -102,7 +128,9 @@ public class ProjectObjectResource extends AbstractProjectResource {
 			   @QueryParam(PITH_YEAR_FROM_QUERY_PARAM) Integer pithYearFrom,
 			   @QueryParam(PITH_YEAR_TO_QUERY_PARAM) Integer pithYearTo,
 			   @QueryParam(OFFSET_PARAM) @DefaultValue("0") int offset,
-	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit) 
+	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit,
+	           @QueryParam(CURSOR_PARAM) String cursorStr,
+	           @QueryParam(FACETS_PARAM) @DefaultValue("false") boolean facets) 
 	
 	{
 		// Advanced Search need login on the GUI, so we want it here also
@@ -128,14 +156,22 @@ public class ProjectObjectResource extends AbstractProjectResource {
 		// Show the standard Object result
 		request.addFilterBean(DccdObjectSB.class);
 		//request.addSortField(new SimpleSortField(DccdProjectSB.PID_NAME, SortOrder.ASC));
-	
-		DccdUser requestingUser=null;
+
+		ListCursor cursor = null;
 		try {
-			requestingUser = authenticate();
-		} catch (ServiceException e1) {
-			e1.printStackTrace();
+			cursor = getCursor(cursorStr, DccdSB.ID_NAME);
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+		if (cursor != null) {
+			// keyset paging needs a sorting instead of the relevance, 
+			// on the id of the object because it is unique
+			request.addSortField(new SimpleSortField(DccdSB.ID_NAME, SortOrder.ASC));
+			cursor.applyTo(request, limit);
+			offset = 0;
 		}
-		if (!isAdmin(requestingUser)) {
+	
+		if (!isAdmin(user)) {
 			// Make sure it is published and not draft!
 			SimpleField<String> stateField = new SimpleField<String>(DccdProjectSB.ADMINISTRATIVE_STATE_NAME, 
 					DatasetState.PUBLISHED.toString());
@@ -179,9 +215,24 @@ public class ProjectObjectResource extends AbstractProjectResource {
 		addLastYearRange(lastYearFrom, lastYearTo, request);
 		addPithYearRange(pithYearFrom, pithYearTo, request);
 		
+		if (facets) {
+			// counting is done by the search engine, no results needed
+			request.setOffset(0);
+			request.setLimit(0);
+			request.setFacetFields(new HashSet<String>(FACET_FIELDS.values()));
+			try {
+				searchResults = DccdSearchService.getService().doSearch(request);
+				return responseXmlOrJson(getFacetsAsXml(searchResults));
+			} catch (SearchServiceException e) {
+				e.printStackTrace();
+				return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+			}
+		}
+		
 		try {
 			searchResults = DccdSearchService.getService().doSearch(request);
-			return responseXmlOrJson(getProjectListSearchResultAsXml(searchResults, offset, limit, requestingUser));
+			ListCursor.Page page = cursor == null ? null : cursor.getPage(searchResults, limit);
+			return responseXmlOrJson(getProjectListSearchResultAsXml(searchResults, offset, limit, user, page));
 		} catch (SearchServiceException e) {
 			e.printStackTrace();
 			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -255,64 +306,87 @@ public class ProjectObjectResource extends AbstractProjectResource {
 		}		
 	}
 		
-	protected String getObjectListSearchResultAsXml(SearchResult<? extends DccdSB> searchResults, 
-			int offset, int limit, DccdUser user) {
-		java.io.StringWriter sw = new StringWriter();
-		
-		sw.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"); // XML instruction
-		sw.append("<objects" + 
-				" total=\"" + searchResults.getTotalHits() + "\"" +
-				" offset=\"" + offset + "\"" +
-				" limit=\"" + limit + "\"" +
-				">");
+	/**
+	 * The counts per value of the facets, for instance how many objects there are with each taxon
+	 * 
+	 * @param searchResults
+	 *            The results of a request with facets
+	 * @return The renderer for the document
+	 */
+	protected DocumentRenderer getFacetsAsXml(final SearchResult<? extends DccdSB> searchResults) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				writer.startElement("facets");
+				writer.attribute("total", String.valueOf(searchResults.getTotalHits()));
 
-		
-		for (SearchHit<? extends DccdSB> hit: searchResults.getHits()) {
-			sw.append("<object>");
-			appendSearchResultDataAsXml(sw, hit.getData(), user);
-			sw.append("</object>");
-		}
-		sw.append("</objects>");
+				for (Map.Entry<String, String> facetName : FACET_FIELDS.entrySet()) {
+					writer.startElement("facet");
+					writer.attribute("name", facetName.getKey());
+					FacetField facet = searchResults.getFacetByName(facetName.getValue());
+					if (facet != null && facet.getValue() != null) {
+						for (FacetValue<?> facetValue : facet.getValue()) {
+							if (facetValue.getCount() == 0)
+								continue;
+							writer.startElement("value");
+							writer.attribute("count", String.valueOf(facetValue.getCount()));
+							writer.characters(String.valueOf(facetValue.getValue()));
+							writer.endElement();
+						}
+					}
+					writer.endElement();
+				}
+				writer.endElement();
+			}
+		};
+	}
+
+	protected DocumentRenderer getObjectListSearchResultAsXml(final SearchResult<? extends DccdSB> searchResults, 
+			final int offset, final int limit, final DccdUser user) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				prefetchEnrichment(searchResults);
 
-		return sw.toString();
+				writer.startElement("objects");
+				writer.attribute("total", String.valueOf(searchResults.getTotalHits()));
+				writer.attribute("offset", Integer.toString(offset));
+				writer.attribute("limit", Integer.toString(limit));
+				
+				for (SearchHit<? extends DccdSB> hit: searchResults.getHits()) {
+					writer.startElement("object");
+					appendSearchResultDataAsXml(writer, hit.getData(), user);
+					writer.endElement();
+				}
+				writer.endElement();
+			}
+		};
 	}
 	
 	/**
 	 * Append object (and its parent project) XML
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
 	@Override
-	protected void appendSearchResultDataAsXml(StringWriter sw, DccdSB dccdSB, DccdUser requestingUser) {
+	protected void appendSearchResultDataAsXml(DocumentWriter writer, DccdSB dccdSB, DccdUser requestingUser) {
 		// store id for the TRiDaS Object datastream
-		sw.append(getXMLElementString("sid", dccdSB.getId()));
-		sw.append(getXMLElementString("title", getObjectTitleString(dccdSB)));
-		sw.append(getXMLElementString("identifier", getObjectIdentifierString(dccdSB)));		
+		writer.element("sid", dccdSB.getId());
+		writer.element("title", getObjectTitleString(dccdSB));
+		writer.element("identifier", getObjectIdentifierString(dccdSB));		
 		
 		// Now also add the 'Project' information
 		// Note that you can only retrieve projects with the API
-		sw.append("<project>");
-		appendProjectPublicDataAsXml(sw, dccdSB);
-		
-		appendProjectPublicLocationAsXml(sw, dccdSB);	
-		appendProjectPublicTimeRangeAsXml(sw, dccdSB);
-		
-		appendProjectPublicTaxonsAsXml(sw, dccdSB);
-		appendProjectPublicTypesAsXml(sw, dccdSB);
-
-		appendProjectPublicDescriptionAsXml(sw, dccdSB);
-		
-		// permission
-		appendProjectPermissionAsXml(sw, dccdSB);
+		writer.startElement("project");
+		// everything that is public, including the permission
+		appendProjectPublicSummaryAsXml(writer, dccdSB);
 		
-		if (isAdmin(requestingUser)) {
-			sw.append(XmlStringUtil.getXMLElementString("state", dccdSB.getAdministrativeState().toString()));
+		if (isAdmin(requestingUser) && isFieldRequested("state")) {
+			writer.element("state", dccdSB.getAdministrativeState().toString());
 		}
 
-		sw.append("</project>");
+		writer.endElement();
 	}
 	
 	private static String getObjectTitleString(final DccdSB dccdHit)
@@ -16,31 +16,39 @@
 package nl.knaw.dans.dccd.rest;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.tridas.schema.*;
 
 import nl.knaw.dans.common.lang.dataset.DatasetState;
+import nl.knaw.dans.common.lang.search.SearchHit;
 import nl.knaw.dans.common.lang.search.SearchResult;
 import nl.knaw.dans.common.lang.search.SortOrder;
 import nl.knaw.dans.common.lang.search.simple.SimpleField;
@@ -61,13 +69,24 @@ import nl.knaw.dans.dccd.model.ProjectPermissionLevel;
 import nl.knaw.dans.dccd.model.DccdUser.Role;
 import nl.knaw.dans.dccd.model.ProjectPermissionMetadata;
 import nl.knaw.dans.dccd.model.UserPermission;
+import nl.knaw.dans.dccd.rest.archival.ProjectAttributeStore;
+import nl.knaw.dans.dccd.rest.cache.ProjectCache;
+import nl.knaw.dans.dccd.rest.cache.TridasDocumentCache;
+import nl.knaw.dans.dccd.rest.cache.ProjectCache.VersionedProject;
+import nl.knaw.dans.dccd.rest.tridas.StoredTridasEventSource;
+import nl.knaw.dans.dccd.rest.tridas.StreamingTridasRestrictor;
+import nl.knaw.dans.dccd.rest.tridas.TridasEventSource;
+import nl.knaw.dans.dccd.rest.tridas.TridasEventStreamingOutput;
 import nl.knaw.dans.dccd.rest.tridas.TridasPermissionRestrictor;
 import nl.knaw.dans.dccd.rest.tridas.TridasRequestedLevelRestrictor;
-import nl.knaw.dans.dccd.rest.util.UrlConverter;
-import nl.knaw.dans.dccd.rest.util.XmlStringUtil;
+import nl.knaw.dans.dccd.rest.tridas.TridasStreamingOutput;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
+import nl.knaw.dans.dccd.rest.util.DocumentWriterException;
+import nl.knaw.dans.dccd.rest.util.JsonDocumentWriter;
+import nl.knaw.dans.dccd.rest.util.StreamingDownload;
 import nl.knaw.dans.dccd.search.DccdProjectSB;
 import nl.knaw.dans.dccd.search.DccdSB;
-import nl.knaw.dans.dccd.tridas.TridasNamespacePrefixMapper;
 
 /**
  * 
@@ -77,11 +96,35 @@ import nl.knaw.dans.dccd.tridas.TridasNamespacePrefixMapper;
 @Path("/project")
 public class ProjectResource extends AbstractProjectResource {
 
+	/**
+	 * Request headers for partial downloads
+	 */
+	public static final String RANGE_HEADER = "Range";
+	public static final String IF_RANGE_HEADER = "If-Range";
+
 	/**
 	 * extra parameters for 'harvesting' clients.
 	 */
 	public static final String MODIFIED_FROM_PARAM = "modFrom";
 	public static final String MODIFIED_UNTIL_PARAM = "modUntil";
+
+	public static final String SID_PARAM = "sid";
+	public static final String RESUMPTION_TOKEN_PARAM = "resumptionToken";
+	public static final int DEFAULT_HARVEST_LIMIT = 100;
+	/** Maximum number of projects on a page of a harvest */
+	public static final int MAX_HARVEST_LIMIT = Integer.getInteger("dccd.rest.harvest.maxLimit", 1000);
+	/** 
+	 * A harvest ends this long before it starts by default, 
+	 * so projects that are not indexed yet are in the next harvest 
+	 */
+	public static final long HARVEST_DELAY_SECONDS = Long.getLong("dccd.rest.harvest.delaySeconds", 60L);
+	/** Maximum number of projects that can be requested by sid at once */
+	public static final int MAX_SIDS = Integer.getInteger("dccd.rest.multiget.maxSids", 100);
+	// Fedora pid: namespace and id
+	private static final Pattern SID_PATTERN = Pattern.compile("[A-Za-z0-9.-]+:[A-Za-z0-9.~_-]+");
+
+	/** Number of projects retrieved per search when exporting the complete list */
+	public static final int EXPORT_BATCH_SIZE = Integer.getInteger("dccd.rest.export.batchSize", 500);
  
 	/**
 	 * Get the complete tridas file, 
@@ -111,41 +154,40 @@ public class ProjectResource extends AbstractProjectResource {
 		// get the project
 		try
 		{
-			Project project = DccdDataService.getService().getProject(id);
-			TridasProject tridasProject = project.getTridas();
+			VersionedProject versionedProject = ProjectCache.getInstance().getVersionedProject(id);
+			Project project = versionedProject.getProject();
 			
+			ProjectPermissionLevel level = null;
 			if (!project.isDownloadAllowed(user) ) {
 				//return Response.status(Status.UNAUTHORIZED).build();
 				if(!project.isViewingAllowed(user))
 					return Response.status(Status.UNAUTHORIZED).build();
-				
-				// Filter it for 'partial' download; what would be visible!
-				ProjectPermissionLevel level = project.getEffectivePermissionLevel(user);
-				TridasPermissionRestrictor permissionRestrictor = new TridasPermissionRestrictor();
-				permissionRestrictor.restrictToPermitted(tridasProject, level);
+				level = project.getEffectivePermissionLevel(user);
 			}
 			
-			// Get all tridas xml
-			java.io.StringWriter sw = new StringWriter();
-			JAXBContext jaxbContext = null;
-			// System.out.println("\n TRiDaS XML, non valid, but with the structure");
-			try {
-				// can it find the schema, and why not part of the lib
-				jaxbContext = JAXBContext.newInstance("org.tridas.schema");
-				Marshaller marshaller = jaxbContext.createMarshaller();
-				marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-				marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-				// improve the namespace mapping
-				marshaller.setProperty("com.sun.xml.bind.namespacePrefixMapper", new TridasNamespacePrefixMapper());
-
-				marshaller.marshal(tridasProject, sw);
-			} catch (JAXBException e) {
-				e.printStackTrace();
-				return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+			// the same restricted document is given to every user with the same level
+			String cacheKey = TridasDocumentCache.getKey(id, versionedProject.getVersion(), 
+					level == null ? TridasDocumentCache.COMPLETE : level.toString(), null);
+			byte[] document = TridasDocumentCache.getInstance().get(cacheKey);
+			if (document != null)
+				return responseTridas(document);
+			
+			if (level != null && StoredTridasEventSource.isAvailable()) {
+				// restrict the stored XML while streaming it, no unmarshalling
+				TridasEventSource source = new StreamingTridasRestrictor(StoredTridasEventSource.forProject(id), 
+						new TridasPermissionRestrictor(), level);
+				return responseTridasEvents(source, cacheKey);
 			}
 			
-			// Always XML, because its TRiDaS
-			return Response.status(Status.OK).entity(sw.toString()).build();
+			TridasProject tridasProject = project.getTridas();
+			if (level != null) {
+				// Filter it for 'partial' download; what would be visible!
+				// on a copy, the cached project is not changed
+				TridasPermissionRestrictor permissionRestrictor = new TridasPermissionRestrictor();
+				tridasProject = permissionRestrictor.getRestricted(tridasProject, level);
+			}
+			
+			return responseTridas(tridasProject, cacheKey);
 		}
 		catch (DataServiceException e)
 		{
@@ -153,6 +195,28 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 	}
 
+	private Response responseTridas(byte[] document) {
+		// Always XML, because its TRiDaS
+		return Response.status(Status.OK)
+				.entity(document)
+				.type(MediaType.APPLICATION_XML).build();
+	}
+
+	private Response responseTridas(TridasProject tridasProject, String cacheKey) {
+		// Always XML, because its TRiDaS
+		// and it is written to the response while being marshalled
+		return Response.status(Status.OK)
+				.entity(new TridasStreamingOutput(tridasProject, cacheKey))
+				.type(MediaType.APPLICATION_XML).build();
+	}
+
+	private Response responseTridasEvents(TridasEventSource source, String cacheKey) {
+		// Always XML, because its TRiDaS
+		return Response.status(Status.OK)
+				.entity(new TridasEventStreamingOutput(source, cacheKey))
+				.type(MediaType.APPLICATION_XML).build();
+	}
+
 	/**
 	 * Note that for the API consistency this should be the reverse mapping of 
 	 * AbstractProjectResource.MAP_PERMISSION_TO_ENTITYLEVEL
@@ -192,52 +256,56 @@ public class ProjectResource extends AbstractProjectResource {
 		// get the project
 		try
 		{
-			Project project = DccdDataService.getService().getProject(id);
-			TridasProject tridasProject = project.getTridas();
+			VersionedProject versionedProject = ProjectCache.getInstance().getVersionedProject(id);
+			Project project = versionedProject.getProject();
 			
-			if (!project.isDownloadAllowed(user) ) {
-				//return Response.status(Status.UNAUTHORIZED).build();
-				if(!project.isViewingAllowed(user))
-					return Response.status(Status.UNAUTHORIZED).build();
-				
-				// Filter it for 'partial' download; what would be visible!
-				// first remove unwanted (not requested) stuff
-				// TEST
-				//ProjectPermissionLevel requestedlevel = ProjectPermissionLevel.PROJECT;
-				ProjectPermissionLevel requestedlevel = MAP_ENTITYLEVEL_TO_PERMISSION.get(entityLevel);
-				TridasRequestedLevelRestrictor requestedRestrictor = new TridasRequestedLevelRestrictor();
-				requestedRestrictor.restrictToPermitted(tridasProject, requestedlevel);
-				
-				// Finally use permission, if we requested more than allowed
-				ProjectPermissionLevel level = project.getEffectivePermissionLevel(user);
+			if (project.isDownloadAllowed(user) ) {
+				// complete, the requested level is not used
+				String cacheKey = TridasDocumentCache.getKey(id, versionedProject.getVersion(), 
+						TridasDocumentCache.COMPLETE, null);
+				byte[] document = TridasDocumentCache.getInstance().get(cacheKey);
+				if (document != null)
+					return responseTridas(document);
+				return responseTridas(project.getTridas(), cacheKey);
+			}
+			
+			//return Response.status(Status.UNAUTHORIZED).build();
+			if(!project.isViewingAllowed(user))
+				return Response.status(Status.UNAUTHORIZED).build();
+			
+			// TEST
+			//ProjectPermissionLevel requestedlevel = ProjectPermissionLevel.PROJECT;
+			ProjectPermissionLevel requestedlevel = MAP_ENTITYLEVEL_TO_PERMISSION.get(entityLevel);
+			ProjectPermissionLevel level = project.getEffectivePermissionLevel(user);
+			
+			String cacheKey = TridasDocumentCache.getKey(id, versionedProject.getVersion(), 
+					level.toString(), requestedlevel.toString());
+			byte[] document = TridasDocumentCache.getInstance().get(cacheKey);
+			if (document != null)
+				return responseTridas(document);
+			
+			if (StoredTridasEventSource.isAvailable()) {
+				// restrict the stored XML while streaming it, no unmarshalling
+				TridasEventSource source = new StreamingTridasRestrictor(StoredTridasEventSource.forProject(id), 
+						new TridasRequestedLevelRestrictor(), requestedlevel);
 				if (!requestedlevel.isPermittedBy(level))
-				{
-					TridasPermissionRestrictor permissionRestrictor = new TridasPermissionRestrictor();
-					permissionRestrictor.restrictToPermitted(tridasProject, level);
-				}
+					source = new StreamingTridasRestrictor(source, new TridasPermissionRestrictor(), level);
+				return responseTridasEvents(source, cacheKey);
 			}
 			
-			// Get all tridas xml
-			java.io.StringWriter sw = new StringWriter();
-			JAXBContext jaxbContext = null;
-			// System.out.println("\n TRiDaS XML, non valid, but with the structure");
-			try {
-				// can it find the schema, and why not part of the lib
-				jaxbContext = JAXBContext.newInstance("org.tridas.schema");
-				Marshaller marshaller = jaxbContext.createMarshaller();
-				marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-				marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);// testing
-				marshaller.marshal(tridasProject, sw);
-				
-				// NOTE namespace is ugly, I did fix that somewhere?
-				
-			} catch (JAXBException e) {
-				e.printStackTrace();
-				return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+			// Filter it for 'partial' download; what would be visible!
+			// first remove unwanted (not requested) stuff, on a copy; the cached project is not changed
+			TridasRequestedLevelRestrictor requestedRestrictor = new TridasRequestedLevelRestrictor();
+			TridasProject tridasProject = requestedRestrictor.getRestricted(project.getTridas(), requestedlevel);
+			
+			// Finally use permission, if we requested more than allowed
+			if (!requestedlevel.isPermittedBy(level))
+			{
+				TridasPermissionRestrictor permissionRestrictor = new TridasPermissionRestrictor();
+				permissionRestrictor.restrictToPermitted(tridasProject, level);
 			}
 			
-			// Always XML, because its TRiDaS
-			return Response.status(Status.OK).entity(sw.toString()).build();
+			return responseTridas(tridasProject, cacheKey);
 		}
 		catch (DataServiceException e)
 		{
@@ -268,24 +336,23 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 		
 		try {
-			Project project = DccdDataService.getService().getProject(id);
+			Project project = ProjectCache.getInstance().getProject(id);
 
 			// For listing download is not needed!
 			//if (!project.isDownloadAllowed(user) ) {
 			//	return Response.status(Status.UNAUTHORIZED).build();
 			//}
 
-			java.io.StringWriter sw = new StringWriter();
-			
-			sw.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"); // XML instruction
-			sw.append("<files>");
-			List<DccdAssociatedFileBinaryUnit> fileBinaryUnits = project.getAssociatedFileBinaryUnits();
-			for (DccdAssociatedFileBinaryUnit unit : fileBinaryUnits) {
-				sw.append(getXMLElementString("file", unit.getFileName()));
-			}
-			sw.append("</files>");
-			
-			return responseXmlOrJson(sw.toString());
+			final List<DccdAssociatedFileBinaryUnit> fileBinaryUnits = project.getAssociatedFileBinaryUnits();
+			return responseXmlOrJson(new DocumentRenderer() {
+				public void render(DocumentWriter writer) {
+					writer.startElement("files");
+					for (DccdAssociatedFileBinaryUnit unit : fileBinaryUnits) {
+						writer.element("file", unit.getFileName());
+					}
+					writer.endElement();
+				}
+			});
 		} catch (DataServiceException e) {
 			e.printStackTrace();
 		}
@@ -305,7 +372,29 @@ public class ProjectResource extends AbstractProjectResource {
 	@GET
 	@Path("/{sid}/associated/{filename}")
 	public Response getAssociatedFilesByProjectSid(@PathParam("sid") String id, 
+													@PathParam("filename") String filename,
+													@HeaderParam(RANGE_HEADER) String range,
+													@HeaderParam(IF_RANGE_HEADER) String ifRange) {
+		return getAssociatedFile(id, filename, range, ifRange, false);
+	}
+
+	/**
+	 * Only the headers of the download, so a client can learn the size (and type) of the file
+	 * 
+	 * @param id
+	 * 			The store ID
+	 * @param filename
+	 * 			The name of the file
+	 * @return
+	 */
+	@HEAD
+	@Path("/{sid}/associated/{filename}")
+	public Response headAssociatedFilesByProjectSid(@PathParam("sid") String id, 
 													@PathParam("filename") String filename) {
+		return getAssociatedFile(id, filename, null, null, true);
+	}
+
+	private Response getAssociatedFile(String id, String filename, String range, String ifRange, boolean headOnly) {
 		// authenticate user
 		DccdUser user = null;
 		try {
@@ -318,7 +407,7 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 
 		try {
-			Project project = DccdDataService.getService().getProject(id);
+			Project project = ProjectCache.getInstance().getProject(id);
 	
 			if (!project.isDownloadAllowed(user) ) {
 				return Response.status(Status.UNAUTHORIZED).build();
@@ -341,11 +430,11 @@ public class ProjectResource extends AbstractProjectResource {
 				// get the url
 				URL fileURL = DccdDataService.getService().getFileURL(project.getSid(), unitId);
 				
-				// NOTE we have all bytes in memory, maybe we can get circumvent it with streaming 
-				byte[] bytes = UrlConverter.toByteArray(fileURL);
+				if (headOnly)
+					return StreamingDownload.openHead(fileURL).headResponseBuilder().build();
 
-				// The file bytes
-				return Response.status(Status.OK).entity(bytes).build();
+				// The file bytes (or the requested range), streamed from the store
+				return StreamingDownload.open(fileURL, range).responseBuilder(range, ifRange).build();
 			}
 		} catch (DataServiceException e) {
 			e.printStackTrace();
@@ -379,24 +468,23 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 		
 		try {
-			Project project = DccdDataService.getService().getProject(id);
+			Project project = ProjectCache.getInstance().getProject(id);
 
 			// For listing download is not needed!
 			//if (!project.isDownloadAllowed(user) ) {
 			//	return Response.status(Status.UNAUTHORIZED).build();
 			//}
 
-			java.io.StringWriter sw = new StringWriter();
-			
-			sw.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"); // XML instruction
-			sw.append("<files>");
-			List<DccdOriginalFileBinaryUnit> fileBinaryUnits = project.getOriginalFileBinaryUnits();
-			for (DccdOriginalFileBinaryUnit unit : fileBinaryUnits) {
-				sw.append(getXMLElementString("file", unit.getFileName()));
-			}
-			sw.append("</files>");
-			
-			return responseXmlOrJson(sw.toString());
+			final List<DccdOriginalFileBinaryUnit> fileBinaryUnits = project.getOriginalFileBinaryUnits();
+			return responseXmlOrJson(new DocumentRenderer() {
+				public void render(DocumentWriter writer) {
+					writer.startElement("files");
+					for (DccdOriginalFileBinaryUnit unit : fileBinaryUnits) {
+						writer.element("file", unit.getFileName());
+					}
+					writer.endElement();
+				}
+			});
 		} catch (DataServiceException e) {
 			e.printStackTrace();
 		}
@@ -416,7 +504,29 @@ public class ProjectResource extends AbstractProjectResource {
 	@GET
 	@Path("/{sid}/originalvalues/{filename}")
 	public Response getOriginalFilesByProjectSid(@PathParam("sid") String id, 
+													@PathParam("filename") String filename,
+													@HeaderParam(RANGE_HEADER) String range,
+													@HeaderParam(IF_RANGE_HEADER) String ifRange) {
+		return getOriginalFile(id, filename, range, ifRange, false);
+	}
+
+	/**
+	 * Only the headers of the download, so a client can learn the size (and type) of the file
+	 * 
+	 * @param id
+	 * 			The store ID
+	 * @param filename
+	 * 			The name of the file
+	 * @return
+	 */
+	@HEAD
+	@Path("/{sid}/originalvalues/{filename}")
+	public Response headOriginalFilesByProjectSid(@PathParam("sid") String id, 
 													@PathParam("filename") String filename) {
+		return getOriginalFile(id, filename, null, null, true);
+	}
+
+	private Response getOriginalFile(String id, String filename, String range, String ifRange, boolean headOnly) {
 		// authenticate user
 		DccdUser user = null;
 		try {
@@ -429,7 +539,7 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 
 		try {
-			Project project = DccdDataService.getService().getProject(id);
+			Project project = ProjectCache.getInstance().getProject(id);
 	
 			if (!project.isDownloadAllowed(user) ) {
 				return Response.status(Status.UNAUTHORIZED).build();
@@ -452,11 +562,11 @@ public class ProjectResource extends AbstractProjectResource {
 				// get the url
 				URL fileURL = DccdDataService.getService().getFileURL(project.getSid(), unitId);
 				
-				// NOTE we have all bytes in memory, maybe we can get circumvent it with streaming 
-				byte[] bytes = UrlConverter.toByteArray(fileURL);
+				if (headOnly)
+					return StreamingDownload.openHead(fileURL).headResponseBuilder().build();
 
-				// The file bytes
-				return Response.status(Status.OK).entity(bytes).build();
+				// The file bytes (or the requested range), streamed from the store
+				return StreamingDownload.open(fileURL, range).responseBuilder(range, ifRange).build();
 			}
 		} catch (DataServiceException e) {
 			e.printStackTrace();
@@ -483,33 +593,33 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 		
 		try {
-			Project project = DccdDataService.getService().getProject(id);
+			final Project project = ProjectCache.getInstance().getProject(id);
 
 			if (user.hasRole(Role.ADMIN) || user.getId().equals(project.getOwnerId())) 
 			{
-				ProjectPermissionMetadata permissionMetadata = project.getPermissionMetadata();
-
-				java.io.StringWriter sw = new StringWriter();
-				sw.append(XmlStringUtil.XML_INSTRUCTION_STR);
-				sw.append("<permission>");
-				sw.append(XmlStringUtil.getXMLElementString("projectId", project.getSid()));
-				sw.append(XmlStringUtil.getXMLElementString("ownerId", project.getOwnerId()));
-				sw.append(XmlStringUtil.getXMLElementString("defaultLevel", permissionMetadata.getDefaultLevel().toString()));
-
-				ArrayList<UserPermission> userPermissionsArrayList = permissionMetadata.getUserPermissionsArrayList();
-				if (!userPermissionsArrayList.isEmpty()) {
-					sw.append("<userPermissions>");
-					for (UserPermission userPermission : userPermissionsArrayList) {
-						sw.append("<userPermission>");
-						sw.append(XmlStringUtil.getXMLElementString("userId", userPermission.getUserId()));
-						sw.append(XmlStringUtil.getXMLElementString("level", userPermission.getLevel().toString()));
-						sw.append("</userPermission>");
+				final ProjectPermissionMetadata permissionMetadata = project.getPermissionMetadata();
+
+				return responseXmlOrJson(new DocumentRenderer() {
+					public void render(DocumentWriter writer) {
+						writer.startElement("permission");
+						writer.element("projectId", project.getSid());
+						writer.element("ownerId", project.getOwnerId());
+						writer.element("defaultLevel", permissionMetadata.getDefaultLevel().toString());
+
+						ArrayList<UserPermission> userPermissionsArrayList = permissionMetadata.getUserPermissionsArrayList();
+						if (!userPermissionsArrayList.isEmpty()) {
+							writer.startElement("userPermissions");
+							for (UserPermission userPermission : userPermissionsArrayList) {
+								writer.startElement("userPermission");
+								writer.element("userId", userPermission.getUserId());
+								writer.element("level", userPermission.getLevel().toString());
+								writer.endElement();
+							}
+							writer.endElement();
+						}
+						writer.endElement();
 					}
-					sw.append("</userPermissions>");
-				}
-				sw.append("</permission>");
-				
-				return responseXmlOrJson(sw.toString());
+				});
 			} else {
 				return Response.status(Status.UNAUTHORIZED).build();
 			}
@@ -540,6 +650,11 @@ public class ProjectResource extends AbstractProjectResource {
 	 * 
 	 * @param offset
 	 * @param limit
+	 * @param cursorStr
+	 *            Use keyset paging instead of the offset; '*' for the first page, 
+	 *            the 'next' of the previous page for the following ones
+	 * @param sids
+	 *            When given only these projects are returned, instead of a paged list
 	 * @return A response containing the paged list of Published/Archived projects
 	 */
 	@GET
@@ -548,19 +663,78 @@ public class ProjectResource extends AbstractProjectResource {
 			   @QueryParam(MODIFIED_FROM_PARAM) String modFromStr,
 			   @QueryParam(MODIFIED_UNTIL_PARAM) String modUntilStr,
 	           @QueryParam(OFFSET_PARAM) @DefaultValue("0") int offset,
-	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit) {
-		SearchResult<? extends DccdSB> searchResults = null;
-		
-		SimpleSearchRequest request = new SimpleSearchRequest();
-		request.setOffset(offset);
-		// TODO support getting all results in a nice way
+	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit,
+	           @QueryParam(CURSOR_PARAM) String cursorStr,
+	           @QueryParam(SID_PARAM) List<String> sids) {
+		DccdUser requestingUser=null;
+		try {
+			requestingUser = authenticate();
+		} catch (ServiceException e1) {
+			e1.printStackTrace();
+		}
+
+		if (sids != null && !sids.isEmpty()) {
+			return responseProjectsByStoreIds(sids, requestingUser);
+		}
+
+		SimpleSearchRequest request;
+		try {
+			request = createProjectListRequest(modFromStr, modUntilStr);
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.NOT_FOUND).build();
+		}
+
 		// limit=0 means no-limit or 'give me everything'
-		//if (limit == 0) 
-		//{
-		//	// Solr  has a default of 10 and no way to specify 'all'
-		//	limit = Integer.MAX_VALUE;
-		//}
+		if (limit == 0) {
+			// Solr has a default of 10 and no way to specify 'all'
+			return responseProjectExport(modFromStr, modUntilStr, requestingUser);
+		}
+
+		request.setOffset(offset);
 		request.setLimit(limit)	;
+
+		String sortField = getProjectListSortField(modFromStr, modUntilStr);
+		ListCursor cursor = null;
+		try {
+			cursor = getCursor(cursorStr, sortField);
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+		if (cursor != null) {
+			cursor.applyTo(request, limit);
+			offset = 0;
+		}
+
+		try {
+			SearchResult<? extends DccdSB> searchResults = DccdSearchService.getService().doSearch(request);
+			ListCursor.Page page = cursor == null ? null : cursor.getPage(searchResults, limit);
+			return responseXmlOrJson(getProjectListSearchResultAsXml(searchResults, offset, limit, requestingUser, page));
+		} catch (SearchServiceException e) {
+			e.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	private String getProjectListSortField(final String modFromStr, final String modUntilStr) {
+		if (modFromStr != null || modUntilStr != null)
+			return DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE;
+		else
+			return DccdProjectSB.PID_NAME;
+	}
+
+	/**
+	 * The request for the list of Published/Archived projects, without offset and limit
+	 * 
+	 * @param modFromStr
+	 * @param modUntilStr
+	 * @return The request
+	 * @throws IllegalArgumentException
+	 *             When a date can't be parsed
+	 */
+	private SimpleSearchRequest createProjectListRequest(final String modFromStr, final String modUntilStr) 
+		throws IllegalArgumentException
+	{
+		SimpleSearchRequest request = new SimpleSearchRequest();
 		
 		// Show Project and not the standard Object result
 		request.addFilterBean(DccdProjectSB.class);
@@ -570,12 +744,10 @@ public class ProjectResource extends AbstractProjectResource {
 			// Sorting on the date makes sense 
 			// Recently changed first (last archived)
 			request.addSortField(new SimpleSortField(DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE, SortOrder.DESC));
+			// same order for projects changed at the same time, needed for cursor paging
+			request.addSortField(new SimpleSortField(DccdProjectSB.PID_NAME, SortOrder.ASC));
 			
-			try {
-				addFilterQueryForModified(request, modFromStr, modUntilStr);
-			} catch (IllegalArgumentException e) {
-				return Response.status(Status.NOT_FOUND).build();
-			}
+			addFilterQueryForModified(request, modFromStr, modUntilStr);
 		}
 		else
 		{
@@ -583,24 +755,125 @@ public class ProjectResource extends AbstractProjectResource {
 			request.addSortField(new SimpleSortField(DccdProjectSB.PID_NAME, SortOrder.ASC));
 		}
 
-		DccdUser requestingUser=null;
-		try {
-			requestingUser = authenticate();
-		} catch (ServiceException e1) {
-			e1.printStackTrace();
-		}
-
 		// Make sure it is published and not draft!
 		SimpleField<String> stateField = new SimpleField<String>(DccdProjectSB.ADMINISTRATIVE_STATE_NAME, 
 				DatasetState.PUBLISHED.toString());
 		request.addFilterQuery(stateField);
+		
+		return request;
+	}
 
-		try {
-			searchResults = DccdSearchService.getService().doSearch(request);
-			return responseXmlOrJson(getProjectListSearchResultAsXml(searchResults, offset, limit, requestingUser));
-		} catch (SearchServiceException e) {
-			e.printStackTrace();
-			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+	/**
+	 * All projects in one response, written while they are retrieved in batches; 
+	 * as one XML or JSON document, or as JSON Lines with a project per line.
+	 * 
+	 * @param modFromStr
+	 * @param modUntilStr
+	 * @param requestingUser
+	 * @return The response
+	 */
+	private Response responseProjectExport(final String modFromStr, final String modUntilStr, 
+			final DccdUser requestingUser) {
+		if (wantsJsonLines()) {
+			StreamingOutput jsonLines = new StreamingOutput() {
+				public void write(final OutputStream output) throws IOException, WebApplicationException {
+					try {
+						new ProjectExport(modFromStr, modUntilStr) {
+							void writeProject(DccdSB dccdSB) {
+								// a complete document for each line
+								DocumentWriter writer = new JsonDocumentWriter(output, false);
+								writer.startDocument();
+								writer.startElement("project");
+								appendSearchResultDataAsXml(writer, dccdSB, requestingUser);
+								writer.endDocument();
+								try {
+									output.write('\n');
+								} catch (IOException e) {
+									throw new DocumentWriterException(e);
+								}
+							}
+						}.run();
+					} catch (SearchServiceException e) {
+						e.printStackTrace();
+						// Note that the client might already have received part of the export
+						throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+					} catch (DocumentWriterException e) {
+						if (e.getCause() instanceof IOException)
+							throw (IOException) e.getCause();
+						throw e;
+					}
+				}
+			};
+			return Response.ok(jsonLines, APPLICATION_JSON_LINES).build();
+		}
+
+		return responseXmlOrJson(new DocumentRenderer() {
+			public void render(final DocumentWriter writer) {
+				try {
+					new ProjectExport(modFromStr, modUntilStr) {
+						void start(long total) {
+							writer.startElement("projects");
+							writer.attribute("total", String.valueOf(total));
+						}
+						void writeProject(DccdSB dccdSB) {
+							writer.startElement("project");
+							appendSearchResultDataAsXml(writer, dccdSB, requestingUser);
+							writer.endElement();
+						}
+					}.run();
+				} catch (SearchServiceException e) {
+					throw new DocumentWriterException(e);
+				}
+				writer.endElement();
+			}
+		});
+	}
+
+	/**
+	 * Retrieves all projects of the list with keyset paging, 
+	 * so only one batch at a time is in memory and each batch costs the same.
+	 */
+	private abstract class ProjectExport {
+		private final String modFromStr;
+		private final String modUntilStr;
+
+		ProjectExport(final String modFromStr, final String modUntilStr) {
+			this.modFromStr = modFromStr;
+			this.modUntilStr = modUntilStr;
+		}
+
+		/**
+		 * Called before the first project
+		 * 
+		 * @param total
+		 *            The number of projects when the export started
+		 */
+		void start(long total) {
+			// nothing to do
+		}
+
+		abstract void writeProject(DccdSB dccdSB);
+
+		void run() throws SearchServiceException {
+			ListCursor cursor = ListCursor.parse(ListCursor.START, getProjectListSortField(modFromStr, modUntilStr));
+			boolean first = true;
+			while (cursor != null) {
+				// a new request, the cursor adds a filter
+				SimpleSearchRequest request = createProjectListRequest(modFromStr, modUntilStr);
+				cursor.applyTo(request, EXPORT_BATCH_SIZE);
+				SearchResult<? extends DccdSB> searchResults = DccdSearchService.getService().doSearch(request);
+				if (first) {
+					start(searchResults.getTotalHits());
+					first = false;
+				}
+
+				ListCursor.Page page = cursor.getPage(searchResults, EXPORT_BATCH_SIZE);
+				prefetchEnrichment(searchResults);
+				for (SearchHit<? extends DccdSB> hit : page.getHits()) {
+					writeProject(hit.getData());
+				}
+				cursor = page.getNext();
+			}
 		}
 	}
 
@@ -641,7 +914,7 @@ public class ProjectResource extends AbstractProjectResource {
 	// Should be fixed in 'dans-solr' commons project  
 	// nl.knaw.dans.common.solr.SolrUtil.toString(final Range<?> range)
 	//
-	public class DateTimeWrapper implements Comparable<DateTimeWrapper> {
+	public static class DateTimeWrapper implements Comparable<DateTimeWrapper> {
 		public DateTime d;
 		public DateTimeWrapper(DateTime d) { this.d = d; } 
 	    public String toString()
@@ -702,7 +975,7 @@ public class ProjectResource extends AbstractProjectResource {
 				return Response.status(Status.NOT_FOUND).build();
 			} else {
 				DccdSB dccdSB = searchResults.getHits().get(0).getData();
-				return responseXmlOrJson(getProjectSearchResultAsXml(dccdSB, requestingUser));
+				return responseProjectXmlOrJson(dccdSB, requestingUser, getProjectSearchResultAsXml(dccdSB, requestingUser));
 			}
 		} catch (SearchServiceException e) {
 			e.printStackTrace();
@@ -710,47 +983,264 @@ public class ProjectResource extends AbstractProjectResource {
 		}
 	}
 	
+	/**
+	 * Harvesting of the projects that have changed, for keeping a copy of the public information up to date. 
+	 * The projects are in the order of their last change (oldest first), and the pages are requested with 
+	 * the resumption token of the previous page. 
+	 * Projects that were harvested as published and are not published anymore are returned as deleted; 
+	 * only with their sid and last change. 
+	 * Other drafts (that could have never been published) are left out, 
+	 * but an admin gets all of them as deleted, with their state.
+	 * 
+	 * The next harvest should start with the 'until' of the previous one as 'modFrom'.
+	 * 
+	 * @param modFromStr
+	 *            Start of the period, the beginning when not given
+	 * @param modUntilStr
+	 *            End of the period, a short while ago when not given
+	 * @param limit
+	 *            Number of projects per page
+	 * @param resumptionToken
+	 *            From the previous page, then the period is not needed
+	 * @return The response
+	 */
+	@GET
+	@Path("/harvest")
+	public Response harvestProjects(
+			   @QueryParam(MODIFIED_FROM_PARAM) String modFromStr,
+			   @QueryParam(MODIFIED_UNTIL_PARAM) String modUntilStr,
+	           @QueryParam(LIMIT_PARAM) @DefaultValue("" + DEFAULT_HARVEST_LIMIT) int limit,
+	           @QueryParam(RESUMPTION_TOKEN_PARAM) String resumptionToken) {
+		if (limit < 1 || limit > MAX_HARVEST_LIMIT)
+			return Response.status(Status.BAD_REQUEST).build();
+
+		DccdUser requestingUser=null;
+		try {
+			requestingUser = authenticate();
+		} catch (ServiceException e1) {
+			e1.printStackTrace();
+		}
+
+		HarvestToken token;
+		try {
+			if (resumptionToken != null) {
+				token = HarvestToken.parse(resumptionToken);
+			} else {
+				DateTimeFormatter df = ISODateTimeFormat.dateTime();
+				DateTime modFrom = modFromStr == null ? null : df.parseDateTime(modFromStr);
+				DateTime modUntil = modUntilStr == null 
+						? new DateTime().minusSeconds((int) HARVEST_DELAY_SECONDS) 
+						: df.parseDateTime(modUntilStr);
+				token = HarvestToken.start(modFrom, modUntil);
+			}
+		} catch (IllegalArgumentException e) {
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		SimpleSearchRequest request = new SimpleSearchRequest();
+		// Show Project and not the standard Object result
+		request.addFilterBean(DccdProjectSB.class);
+		request.addSortField(new SimpleSortField(DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE, SortOrder.ASC));
+		request.addSortField(new SimpleSortField(DccdProjectSB.PID_NAME, SortOrder.ASC));
+		// Note that drafts are not filtered out, they can be the deleted ones
+		SimpleField<Range<DateTimeWrapper>> periodField = 
+				new SimpleField<Range<DateTimeWrapper>>(DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE);
+		periodField.setValue(new Range<DateTimeWrapper>(
+				token.getFrom() == null ? null : new DateTimeWrapper(token.getFrom()), 
+				new DateTimeWrapper(token.getUntil())));
+		request.addFilterQuery(periodField);
+		token.getCursor().applyTo(request, limit);
+
+		try {
+			SearchResult<? extends DccdSB> searchResults = DccdSearchService.getService().doSearch(request);
+			ListCursor.Page page = token.getCursor().getPage(searchResults, limit);
+			return responseXmlOrJson(getHarvestAsXml(searchResults, page, token, requestingUser));
+		} catch (SearchServiceException e) {
+			e.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	DocumentRenderer getHarvestAsXml(final SearchResult<? extends DccdSB> searchResults, 
+			final ListCursor.Page page, final HarvestToken token, final DccdUser requestingUser) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				prefetchEnrichment(searchResults);
+				DateTimeFormatter fmt = ISODateTimeFormat.dateTime().withZone(DateTimeZone.UTC);
+
+				writer.startElement("harvest");
+				if (token.getFrom() != null)
+					writer.attribute("from", fmt.print(token.getFrom()));
+				writer.attribute("until", fmt.print(token.getUntil()));
+				writer.attribute("total", String.valueOf(page.getTotal()));
+				if (page.getNext() != null)
+					writer.attribute(RESUMPTION_TOKEN_PARAM, token.next(page.getNext()).format());
+
+				ProjectAttributeStore attributeStore = ProjectAttributeStore.getInstance();
+				for (SearchHit<? extends DccdSB> hit : page.getHits()) {
+					DccdSB dccdSB = hit.getData();
+					String sid = dccdSB.getPid();
+					if (DatasetState.PUBLISHED.toString().equals(dccdSB.getAdministrativeState().toString())) {
+						// so we know it was copied when it is withdrawn
+						attributeStore.setAttribute(sid, ProjectAttributeStore.HARVESTED, "true");
+						writer.startElement("project");
+						appendSearchResultDataAsXml(writer, dccdSB, requestingUser);
+						writer.endElement();
+					} else if (isAdmin(requestingUser) 
+							|| attributeStore.getAttribute(sid, ProjectAttributeStore.HARVESTED) != null) {
+						writer.startElement("project");
+						writer.attribute("status", "deleted");
+						writer.element("sid", sid);
+						if (isAdmin(requestingUser))
+							writer.element("state", dccdSB.getAdministrativeState().toString());
+						writer.element("stateChanged", fmt.print(dccdSB.getAdministrativeStateLastChange()));
+						writer.endElement();
+					}
+					// else a draft that was never harvested, nothing to delete
+				}
+				writer.endElement();
+			}
+		};
+	}
+
+	/**
+	 * Get several projects with one search, 
+	 * with the same information and restrictions as for getProjectByStoreId.
+	 * 
+	 * @param sids
+	 *            The store ID's
+	 * @param requestingUser
+	 * @return The response with the projects that where found, in the requested order
+	 */
+	private Response responseProjectsByStoreIds(final List<String> sids, final DccdUser requestingUser) {
+		final Set<String> uniqueSids = new LinkedHashSet<String>(sids);
+		if (uniqueSids.size() > MAX_SIDS)
+			return Response.status(Status.BAD_REQUEST).build();
+		for (String sid : uniqueSids) {
+			if (!SID_PATTERN.matcher(sid).matches())
+				return Response.status(Status.BAD_REQUEST).build();
+		}
+
+		try {
+			final List<DccdSB> projects = searchProjectsByStoreIds(uniqueSids, !isAdmin(requestingUser));
+			return responseXmlOrJson(new DocumentRenderer() {
+				public void render(DocumentWriter writer) {
+					prefetchEnrichment(projects);
+
+					writer.startElement("projects");
+					writer.attribute("total", String.valueOf(projects.size()));
+					for (DccdSB dccdSB : projects) {
+						writer.startElement("project");
+						appendSearchResultDataAsXml(writer, dccdSB, requestingUser);
+						writer.endElement();
+					}
+					writer.endElement();
+				}
+			});
+		} catch (SearchServiceException e) {
+			e.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	/**
+	 * Search the projects with a single filter query on their sids
+	 * 
+	 * @param sids
+	 *            The store ID's, that match the SID_PATTERN
+	 * @param onlyPublished
+	 *            Leave out the projects that are not published
+	 * @return The projects that were found, in the order of the sids
+	 * @throws SearchServiceException
+	 */
+	static List<DccdSB> searchProjectsByStoreIds(final Collection<String> sids, final boolean onlyPublished) 
+			throws SearchServiceException {
+		List<DccdSB> projects = new ArrayList<DccdSB>(sids.size());
+		if (sids.isEmpty())
+			return projects;
+
+		SimpleSearchRequest request = new SimpleSearchRequest();
+		request.setLimit(sids.size());
+		request.setOffset(0);
+
+		// Show Project and not the standard Object result
+		request.addFilterBean(DccdProjectSB.class);
+
+		if (onlyPublished) {
+			// Make sure it is published and not draft!
+			SimpleField<String> stateField = new SimpleField<String>(DccdProjectSB.ADMINISTRATIVE_STATE_NAME, 
+					DatasetState.PUBLISHED.toString());
+			request.addFilterQuery(stateField);
+		}
+
+		// restrict to the sids
+		SimpleField<String> idField = new SimpleField<String>(DccdProjectSB.PID_NAME, getStoreIdsFilterValue(sids));
+		request.addFilterQuery(idField);
+
+		SearchResult<? extends DccdSB> searchResults = DccdSearchService.getService().doSearch(request);
+		Map<String, DccdSB> found = new HashMap<String, DccdSB>();
+		for (SearchHit<? extends DccdSB> hit : searchResults.getHits()) {
+			found.put(hit.getData().getPid(), hit.getData());
+		}
+		for (String sid : sids) {
+			if (found.containsKey(sid))
+				projects.add(found.get(sid));
+		}
+		return projects;
+	}
+
+	/**
+	 * The value of a filter on several sids; it is passed to the search engine as query syntax, 
+	 * so everything but letters and digits (like the ':' of the sid) is escaped.
+	 * 
+	 * @param sids
+	 *            The store ID's
+	 * @return The sids as one OR expression
+	 */
+	static String getStoreIdsFilterValue(final Collection<String> sids) {
+		StringBuilder value = new StringBuilder("(");
+		for (String sid : sids) {
+			if (value.length() > 1)
+				value.append(" OR ");
+			for (char c : sid.toCharArray()) {
+				if (!Character.isLetterOrDigit(c))
+					value.append('\\');
+				value.append(c);
+			}
+		}
+		return value.append(')').toString();
+	}
+
 	/** 
-	 * Construct search result information as XML String
+	 * Construct search result information as XML (or JSON) document
 	 * 
 	 * @param dccdSB
 	 *            search result
 	 */
-	private String getProjectSearchResultAsXml(DccdSB dccdSB, DccdUser requestingUser) {
-		java.io.StringWriter sw = new StringWriter();
-		
-		sw.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"); // XML instruction
-		sw.append("<project>");
-		appendSearchResultDataAsXml(sw, dccdSB, requestingUser);
-		sw.append("</project>");
-
-		return sw.toString();
+	private DocumentRenderer getProjectSearchResultAsXml(final DccdSB dccdSB, final DccdUser requestingUser) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				writer.startElement("project");
+				appendSearchResultDataAsXml(writer, dccdSB, requestingUser);
+				writer.endElement();
+			}
+		};
 	}
 	
 	/**
 	 * Append project XML
 	 * 
-	 * @param sw
+	 * @param writer
 	 *            writer to append to
 	 * @param dccdSB
 	 *            search result
 	 */
-	protected void appendSearchResultDataAsXml(java.io.StringWriter sw, DccdSB dccdSB, DccdUser requestingUser) {
-		appendProjectPublicDataAsXml(sw, dccdSB);
-
-		appendProjectPublicLocationAsXml(sw, dccdSB);
-		appendProjectPublicTimeRangeAsXml(sw, dccdSB);
-		
-		appendProjectPublicTaxonsAsXml(sw, dccdSB);
-		appendProjectPublicTypesAsXml(sw, dccdSB);
-		
-		appendProjectPublicDescriptionAsXml(sw, dccdSB);
-
-		// permission
-		appendProjectPermissionAsXml(sw, dccdSB);
+	protected void appendSearchResultDataAsXml(DocumentWriter writer, DccdSB dccdSB, DccdUser requestingUser) {
+		// everything that is public, including the permission
+		appendProjectPublicSummaryAsXml(writer, dccdSB);
 
-		if (isAdmin(requestingUser)) {
-			sw.append(XmlStringUtil.getXMLElementString("state", dccdSB.getAdministrativeState().toString()));
+		if (isAdmin(requestingUser) && isFieldRequested("state")) {
+			writer.element("state", dccdSB.getAdministrativeState().toString());
 		}
 	}
 	
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import java.util.List;
+import java.util.Locale;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.rest.cache.CacheRegistry;
+import nl.knaw.dans.dccd.rest.cache.CacheStatistics;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
+
+/**
+ * Information about the running service, only for administrators
+ * 
+ * @author paulboon
+ *
+ */
+@Path("/status")
+public class StatusResource extends AbstractResource {
+
+	/**
+	 * Get the statistics of the caches
+	 * 
+	 * @return
+	 */
+	@GET
+	public Response getStatus() {
+		// authenticate user
+		DccdUser requestingUser = null;
+		try {
+			requestingUser = authenticate();
+			if (requestingUser == null || !isAdmin(requestingUser))
+				return Response.status(Status.UNAUTHORIZED).build();
+		} catch (ServiceException eAuth) {
+			eAuth.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+
+		final List<CacheStatistics> caches = CacheRegistry.getCaches();
+		return responseXmlOrJson(new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				writer.startElement("status");
+				writer.startElement("caches");
+				for (CacheStatistics cache : caches) {
+					writer.startElement("cache");
+					writer.element("name", cache.getName());
+					writer.element("size", Integer.toString(cache.getSize()));
+					writer.element("weight", Long.toString(cache.getWeight()));
+					writer.element("hits", Long.toString(cache.getHits()));
+					writer.element("misses", Long.toString(cache.getMisses()));
+					writer.element("hitRate", getHitRate(cache));
+					writer.element("evictions", Long.toString(cache.getEvictions()));
+					writer.endElement();
+				}
+				writer.endElement();
+				writer.endElement();
+			}
+		});
+	}
+
+	/**
+	 * @param cache
+	 * @return The fraction of the lookups that was found in the cache, as text
+	 */
+	private static String getHitRate(CacheStatistics cache) {
+		long lookups = cache.getHits() + cache.getMisses();
+		if (lookups == 0)
+			return "0";
+		return String.format(Locale.US, "%.3f", (double) cache.getHits() / lookups);
+	}
+}
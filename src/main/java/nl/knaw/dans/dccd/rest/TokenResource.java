@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import java.util.List;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
+
+import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.rest.auth.Authenticator;
+import nl.knaw.dans.dccd.rest.auth.TokenService;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
+
+/**
+ * Exchange the username and password for a token, 
+ * which can be used instead of them until it expires. 
+ * 
+ * example
+ * curl -u normaltestuser:testtest -X POST http://localhost:8080/dccd-rest/rest/token
+ * curl -H "Authorization: Bearer <token>" http://localhost:8080/dccd-rest/rest/myproject
+ * 
+ * @author paulboon
+ *
+ */
+@Path("/token")
+public class TokenResource extends AbstractResource {
+
+	@POST
+	public Response createToken() {
+		// only with the password, a token can not be used to get a new one
+		List<String> authHeaders = getRequestHeaders().getRequestHeader(HttpHeaders.AUTHORIZATION);
+		if (authHeaders == null || authHeaders.isEmpty() || Authenticator.isBearer(authHeaders.get(0)))
+			return Response.status(Status.UNAUTHORIZED).build();
+
+		// authenticate user
+		DccdUser user = null;
+		try {
+			user = authenticate();
+			if (user == null)
+				return Response.status(Status.UNAUTHORIZED).build();
+		} catch (ServiceException eAuth) {
+			eAuth.printStackTrace();
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+
+		final DateTime expires = new DateTime().plusSeconds((int) TokenService.TTL_SECONDS);
+		final String token = TokenService.getInstance().createToken(user, expires.getMillis());
+		final String userId = user.getId();
+
+		return responseXmlOrJson(new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				writer.startElement("token");
+				writer.element("value", token);
+				writer.element("type", TokenService.AUTHENTICATION_TYPE.trim());
+				writer.element("userId", userId);
+				// convert to UTC and format as ISO
+				writer.element("expires", ISODateTimeFormat.dateTime().print(expires.toDateTime(DateTimeZone.UTC)));
+				writer.endElement();
+			}
+		});
+	}
+}
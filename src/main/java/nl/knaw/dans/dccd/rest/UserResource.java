@@ -1,6 +1,5 @@
 package nl.knaw.dans.dccd.rest;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,7 +19,9 @@ import nl.knaw.dans.dccd.application.services.DccdUserService;
 import nl.knaw.dans.dccd.application.services.UserServiceException;
 import nl.knaw.dans.dccd.model.DccdUser;
 import nl.knaw.dans.dccd.model.DccdUser.Role;
-import nl.knaw.dans.dccd.rest.util.XmlStringUtil;
+import nl.knaw.dans.dccd.rest.cache.UserDirectoryCache;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
 
 @Path("/user")
 public class UserResource extends AbstractResource {
@@ -47,34 +48,28 @@ public class UserResource extends AbstractResource {
 
 		// OK, now get the users from the UserRepo...
 		try {
-			List<DccdUser> users = retrieveUsers(requestingUser);
+			final List<DccdUser> users = retrieveUsers(requestingUser);
+			final boolean showAdministrative = requestingUser.hasRole(Role.ADMIN);
 			
 			// construct the response
-			java.io.StringWriter sw = new StringWriter();
-			
-			sw.append(XmlStringUtil.XML_INSTRUCTION_STR); 
-			sw.append("<users>");
-			for (DccdUser user : users) {
-				sw.append("<user>");
-				sw.append(getGeneralUserInfo(user));
+			return responseXmlOrJson(new DocumentRenderer() {
+				public void render(DocumentWriter writer) {
+					writer.startElement("users");
+					for (DccdUser user : users) {
+						writer.startElement("user");
+						appendGeneralUserInfo(writer, user);
 
-				if (requestingUser.hasRole(Role.ADMIN))
-				{
-					// administrative
-					sw.append(XmlStringUtil.getXMLElementString("accountState", user.getState().toString())); //account state and not a location
-					if (!user.getRoles().isEmpty()) {
-						sw.append("<roles>");
-						for (Role role : user.getRoles()) {
-							sw.append(XmlStringUtil.getXMLElementString("role", role.toString()));
+						if (showAdministrative)
+						{
+							// administrative
+							writer.element("accountState", user.getState().toString()); //account state and not a location
+							appendUserRolesOptional(writer, user);
 						}
-						sw.append("</roles>");
+						writer.endElement();
 					}
+					writer.endElement();
 				}
-				sw.append("</user>");
-			}
-			sw.append("</users>");
-			
-			return responseXmlOrJson(sw.toString());
+			});
 			
 		} catch (UserServiceException e) {			
 			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -103,32 +98,32 @@ public class UserResource extends AbstractResource {
 		}
 		
 		try {
-			DccdUser user = DccdUserService.getService().getUserById(uid);
+			final DccdUser user = UserDirectoryCache.getInstance().getUser(uid);
 			
 			if (user != null) {
 				// construct the response
-				java.io.StringWriter sw = new StringWriter();
-				
-				sw.append(XmlStringUtil.XML_INSTRUCTION_STR);
-				sw.append("<user>");
-				sw.append(getGeneralUserInfo(user));
-				
-				// restricted more detailed personal information 
-				sw.append(XmlStringUtil.getXMLElementStringOptional("title", user.getTitle()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("initials", user.getInitials()));// actually required on registration
-				sw.append(XmlStringUtil.getXMLElementStringOptional("prefixes", user.getPrefixes()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("function", user.getFunction()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("telephone", user.getTelephone()));
-				sw.append(XmlStringUtil.getXMLElementStringOptional("dai", user.getDigitalAuthorIdentifier()));
-				
-				// administrative
-				sw.append(XmlStringUtil.getXMLElementString("accountState", user.getState().toString())); //account state and not a location
-				sw.append(getXMLUserRolesStringOptional(user));
-				if (user.getLastLoginDate() != null) // sometimes people have not logged in at all
-					sw.append(XmlStringUtil.getXMLElementString("lastLoginDate", getDateTimeFormattedAsString(user.getLastLoginDate())));		
+				return responseXmlOrJson(new DocumentRenderer() {
+					public void render(DocumentWriter writer) {
+						writer.startElement("user");
+						appendGeneralUserInfo(writer, user);
+						
+						// restricted more detailed personal information 
+						writer.elementOptional("title", user.getTitle());
+						writer.elementOptional("initials", user.getInitials());// actually required on registration
+						writer.elementOptional("prefixes", user.getPrefixes());
+						writer.elementOptional("function", user.getFunction());
+						writer.elementOptional("telephone", user.getTelephone());
+						writer.elementOptional("dai", user.getDigitalAuthorIdentifier());
+						
+						// administrative
+						writer.element("accountState", user.getState().toString()); //account state and not a location
+						appendUserRolesOptional(writer, user);
+						if (user.getLastLoginDate() != null) // sometimes people have not logged in at all
+							writer.element("lastLoginDate", getDateTimeFormattedAsString(user.getLastLoginDate()));		
 
-				sw.append("</user>");
-				return responseXmlOrJson(sw.toString());
+						writer.endElement();
+					}
+				});
 			} else {
 				return Response.status(Status.NOT_FOUND).build();
 			}
@@ -137,28 +132,24 @@ public class UserResource extends AbstractResource {
 		}
 	}
 	
-	private String getGeneralUserInfo(final DccdUser user)
+	private void appendGeneralUserInfo(DocumentWriter writer, final DccdUser user)
 	{
-		java.io.StringWriter sw = new StringWriter();
-		sw.append(XmlStringUtil.getXMLElementString("id", user.getId()));
-		sw.append(XmlStringUtil.getXMLElementString("displayname", user.getDisplayName()));
-		sw.append(XmlStringUtil.getXMLElementString("lastname", user.getSurname()));
-		sw.append("<email>" + user.getEmail() + "</email>"); // no escape needed
-		sw.append(XmlStringUtil.getXMLElementString("organisation", user.getOrganization()));
-		return sw.toString();
+		writer.element("id", user.getId());
+		writer.element("displayname", user.getDisplayName());
+		writer.element("lastname", user.getSurname());
+		writer.element("email", user.getEmail());
+		writer.element("organisation", user.getOrganization());
 	}
 	
-	private String getXMLUserRolesStringOptional(final DccdUser user)
+	private void appendUserRolesOptional(DocumentWriter writer, final DccdUser user)
 	{
-		java.io.StringWriter sw = new StringWriter();
 		if (!user.getRoles().isEmpty()) {
-			sw.append("<roles>");
+			writer.startElement("roles");
 			for (Role role : user.getRoles()) {
-				sw.append(XmlStringUtil.getXMLElementString("role", role.toString()));
+				writer.element("role", role.toString());
 			}
-			sw.append("</roles>");
+			writer.endElement();
 		}
-		return sw.toString();
 	}
 	
 	private String getDateTimeFormattedAsString(final DateTime d) {
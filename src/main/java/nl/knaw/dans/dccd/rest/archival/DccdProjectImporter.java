@@ -151,6 +151,22 @@ public class DccdProjectImporter {
 	 * @throws IOException
 	 */
 	public static String importProject(File projectFolder, String userId) throws IOException
+	{
+		return importProject(projectFolder, userId, null);
+	}
+
+	/**
+	 * 
+	 * @param projectFolder
+	 * @param userId
+	 * @param progress
+	 *            Is told about each stage of the import, can be null
+	 * 
+	 * @return The SID of the project
+	 * 
+	 * @throws IOException
+	 */
+	public static String importProject(File projectFolder, String userId, ImportProgress progress) throws IOException
 	{
 		String associatedFolderName = "associated"; // TODO get from options
 		String valuesFolderName ="values"; // TODO get from options
@@ -211,10 +227,12 @@ public class DccdProjectImporter {
 
 		// Import 
 		
+		reportStage(progress, ImportProgress.STAGE_TRIDAS);
 		LOGGER.info("Tridas File import..");
 		Project project = importTridasFile(tridasFile, tridasLanguage, userId);
 		LOGGER.info("done");
 		
+		reportStage(progress, ImportProgress.STAGE_VALUES);
 		LOGGER.info("Value Files import...");
 		importValueFiles(project, valuesFolder, formatString); 
 		// Value entities might have been added => 
@@ -223,11 +241,13 @@ public class DccdProjectImporter {
 		entityTree.buildTree(project.getTridas());
 		LOGGER.info("done");
 			
+		reportStage(progress, ImportProgress.STAGE_ASSOCIATED);
 		LOGGER.info("Associated Files import...");
 		importAssociatedFiles(project, associatedFolder);
 		LOGGER.info("done");
 		
 
+		reportStage(progress, ImportProgress.STAGE_STORING);
 		LOGGER.info("Storing project...");
 		// Store the project
 		try
@@ -241,6 +261,11 @@ public class DccdProjectImporter {
 		}
 		LOGGER.info("done");
 		
+		// remember what is needed for listing, without loading the project again
+		ProjectAttributeStore attributeStore = ProjectAttributeStore.getInstance();
+		attributeStore.setAttribute(project.getSid(), ProjectAttributeStore.LANGUAGE, tridasLanguage.getLanguage());
+		attributeStore.setAttribute(project.getSid(), ProjectAttributeStore.VALUES_FORMAT, formatString);
+		
 		try
 		{
 			logProjectImport(project, projectFolder);
@@ -254,6 +279,12 @@ public class DccdProjectImporter {
 		return project.getSid();//getDmoStoreId().toString();//getSid();
 	}
 	
+	private static void reportStage(ImportProgress progress, String stage)
+	{
+		if (progress != null)
+			progress.stage(stage);
+	}
+	
 	// add log line to the project import log file
 	private static void logProjectImport(Project project, File projectFolder) throws FileNotFoundException
 	{
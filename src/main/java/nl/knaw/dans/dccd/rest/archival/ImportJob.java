@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.archival;
+
+import java.util.UUID;
+
+/**
+ * The state of an asynchronous project import, 
+ * it is updated by the worker thread and read by the status requests.
+ * 
+ * @author paulboon
+ *
+ */
+public class ImportJob implements ImportProgress {
+	public enum State {
+		QUEUED, RUNNING, SUCCEEDED, FAILED
+	}
+
+	private final String id = UUID.randomUUID().toString();
+	private final String userId;
+	private final long created = System.currentTimeMillis();
+
+	private volatile State state = State.QUEUED;
+	private volatile String stage = null;
+	private volatile long started = 0;
+	private volatile long finished = 0;
+	private volatile String sid = null;
+	private volatile String error = null;
+
+	public ImportJob(final String userId) {
+		this.userId = userId;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return The user that uploaded the project, the only one (besides admins) that may see the job
+	 */
+	public String getUserId() {
+		return userId;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return What the running import is doing, the last stage when it has finished
+	 */
+	public String getStage() {
+		return stage;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * @return Time the import started, 0 if still queued
+	 */
+	public long getStarted() {
+		return started;
+	}
+
+	/**
+	 * @return Time the import finished, 0 if not finished
+	 */
+	public long getFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return The sid of the imported project, null unless succeeded
+	 */
+	public String getSid() {
+		return sid;
+	}
+
+	/**
+	 * @return Why it failed, null unless failed
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public boolean isFinished() {
+		return state == State.SUCCEEDED || state == State.FAILED;
+	}
+
+	@Override
+	public void stage(final String stage) {
+		this.stage = stage;
+	}
+
+	void start() {
+		started = System.currentTimeMillis();
+		state = State.RUNNING;
+	}
+
+	void succeed(final String sid) {
+		this.sid = sid;
+		finished = System.currentTimeMillis();
+		state = State.SUCCEEDED;
+	}
+
+	void fail(final String error) {
+		this.error = error;
+		finished = System.currentTimeMillis();
+		state = State.FAILED;
+	}
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.archival;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.knaw.dans.dccd.rest.cache.ProjectCache;
+import nl.knaw.dans.dccd.rest.util.BufferPool;
+import nl.knaw.dans.dccd.util.FileUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports uploaded projects in the background, 
+ * so the upload request doesn't have to wait for the (sometimes very long) import. 
+ * 
+ * The upload is saved to a temporary file and the import is done by a bounded pool of workers. 
+ * Finished jobs are kept for a while so the client can get the result.
+ * 
+ * @author paulboon
+ *
+ */
+public class ImportJobService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImportJobService.class);
+
+	public static final int THREADS = Integer.getInteger("dccd.rest.import.threads", 2);
+	public static final int QUEUE_SIZE = Integer.getInteger("dccd.rest.import.queueSize", 20);
+	public static final long RETENTION_SECONDS = Long.getLong("dccd.rest.import.retentionSeconds", 24 * 3600L);
+
+	private static final ImportJobService INSTANCE = new ImportJobService();
+
+	private final Map<String, ImportJob> jobs = new ConcurrentHashMap<String, ImportJob>();
+	private final ThreadPoolExecutor executor;
+
+	private ImportJobService() {
+		executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "ImportJobService-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static ImportJobService getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Save the uploaded zip and queue the import
+	 * 
+	 * @param uploadedInputStream
+	 *            The zip with the project
+	 * @param userId
+	 *            The user that will own the project
+	 * @return The job
+	 * @throws IOException
+	 *             When the upload could not be saved
+	 * @throws RejectedExecutionException
+	 *             When too many imports are waiting
+	 */
+	public ImportJob submit(final InputStream uploadedInputStream, final String userId) 
+			throws IOException, RejectedExecutionException {
+		removeExpiredJobs();
+		if (executor.getQueue().remainingCapacity() == 0)
+			throw new RejectedExecutionException("Too many imports waiting");
+
+		final File zipFile = spool(uploadedInputStream);
+		final ImportJob job = new ImportJob(userId);
+		jobs.put(job.getId(), job);
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						runImport(job, zipFile);
+					} finally {
+						zipFile.delete();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			zipFile.delete();
+			throw e;
+		}
+		return job;
+	}
+
+	/**
+	 * @param jobId
+	 * @return The job, null if it doesn't exist (anymore)
+	 */
+	public ImportJob getJob(final String jobId) {
+		return jobs.get(jobId);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private void runImport(final ImportJob job, final File zipFile) {
+		job.start();
+		LOGGER.info("Import job " + job.getId() + " started");
+		File tempDir = null;
+		try {
+			job.stage(ImportProgress.STAGE_UNZIPPING);
+			tempDir = FileExtractor.createTempDir();
+			List<File> unzip;
+			InputStream zipInput = new FileInputStream(zipFile);
+			try {
+				unzip = FileExtractor.unzip(zipInput, tempDir);
+			} finally {
+				zipInput.close();
+			}
+			File projectFolder = FileExtractor.getDataFolder(unzip.get(0));
+
+			String sid = DccdProjectImporter.importProject(projectFolder, job.getUserId(), job);
+			if (sid == null || sid.isEmpty()) {
+				job.fail("No TRiDaS file found");
+			} else {
+				// in case an earlier version of it is cached
+				ProjectCache.getInstance().invalidate(sid);
+				job.succeed(sid);
+			}
+		} catch (IOException e) {
+			LOGGER.error("Import job " + job.getId() + " failed", e);
+			job.fail(e.getMessage());
+		} catch (RuntimeException e) {
+			LOGGER.error("Import job " + job.getId() + " failed", e);
+			job.fail(e.toString());
+		} catch (Error e) {
+			// don't leave the job running, but don't swallow the error either
+			LOGGER.error("Import job " + job.getId() + " failed", e);
+			job.fail(e.toString());
+			throw e;
+		} finally {
+			// need to delete temp after ingest
+			if (tempDir != null)
+				FileUtil.deleteDirectory(tempDir);
+		}
+		LOGGER.info("Import job " + job.getId() + " " + job.getState());
+	}
+
+	private File spool(final InputStream uploadedInputStream) throws IOException {
+		File zipFile = File.createTempFile("dccd-rest-import", ".zip");
+		BufferPool bufferPool = BufferPool.getShared();
+		byte[] buffer = bufferPool.borrow();
+		OutputStream out = new FileOutputStream(zipFile);
+		boolean spooled = false;
+		try {
+			int n;
+			while ((n = uploadedInputStream.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			spooled = true;
+		} finally {
+			bufferPool.release(buffer);
+			out.close();
+			if (!spooled)
+				zipFile.delete();
+		}
+		return zipFile;
+	}
+
+	private void removeExpiredJobs() {
+		long expired = System.currentTimeMillis() - RETENTION_SECONDS * 1000;
+		for (Iterator<ImportJob> it = jobs.values().iterator(); it.hasNext();) {
+			ImportJob job = it.next();
+			if (job.isFinished() && job.getFinished() < expired)
+				it.remove();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.archival;
+
+/**
+ * Is told what the project import is doing, so it can be reported while it runs.
+ * 
+ * @author paulboon
+ *
+ */
+public interface ImportProgress {
+	String STAGE_UNZIPPING = "unzipping";
+	String STAGE_TRIDAS = "tridas";
+	String STAGE_VALUES = "values";
+	String STAGE_ASSOCIATED = "associated";
+	String STAGE_STORING = "storing";
+
+	/**
+	 * @param stage
+	 *            The stage that starts now
+	 */
+	void stage(String stage);
+}
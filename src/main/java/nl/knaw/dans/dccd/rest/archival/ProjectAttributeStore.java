@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.archival;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import nl.knaw.dans.dccd.application.services.DataServiceException;
+import nl.knaw.dans.dccd.model.Project;
+import nl.knaw.dans.dccd.rest.cache.ProjectCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small archival attributes of projects (like the language), by project sid. 
+ * 
+ * Getting these from the project itself means loading the complete project from the store, 
+ * which is much to expensive when listing projects. 
+ * The attributes are set when importing and retrieved from the project once for older projects, 
+ * or when harvesting (HARVESTED). 
+ * 
+ * When the system property 'dccd.rest.projectAttributes.file' is set 
+ * the attributes are saved to that (properties) file and loaded on startup, 
+ * otherwise they only live in memory. 
+ * 
+ * @author paulboon
+ *
+ */
+public class ProjectAttributeStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProjectAttributeStore.class);
+
+	public static final String LANGUAGE = "language";
+	public static final String VALUES_FORMAT = "valuesFormat";
+	/** The project was published when it was harvested, so its withdrawal must be harvested too */
+	public static final String HARVESTED = "harvested";
+
+	public static final String FILE_PROPERTY = "dccd.rest.projectAttributes.file";
+	private static final long SAVE_INTERVAL_MILLIS = 60 * 1000L;
+	private static final String KEY_SEPARATOR = "/"; // not used in sids
+
+	private static ProjectAttributeStore instance = null;
+
+	// Properties is synchronized
+	private final Properties attributes = new Properties();
+	private final File file;
+	private boolean changed = false;
+	private Timer saveTimer = null;
+
+	private ProjectAttributeStore(final File file) {
+		this.file = file;
+	}
+
+	public static synchronized ProjectAttributeStore getInstance() {
+		if (instance == null) {
+			String fileName = System.getProperty(FILE_PROPERTY);
+			instance = new ProjectAttributeStore(fileName == null ? null : new File(fileName));
+			instance.load();
+		}
+		return instance;
+	}
+
+	/**
+	 * @param sid
+	 *            The project sid
+	 * @param name
+	 *            The attribute name
+	 * @return The value, null if not known
+	 */
+	public String getAttribute(final String sid, final String name) {
+		return attributes.getProperty(sid + KEY_SEPARATOR + name);
+	}
+
+	public void setAttribute(final String sid, final String name, final String value) {
+		if (value == null)
+			return;
+		Object previous = attributes.setProperty(sid + KEY_SEPARATOR + name, value);
+		if (!value.equals(previous))
+			markChanged();
+	}
+
+	/**
+	 * Remove all attributes of the project, when it is deleted
+	 * 
+	 * @param sid
+	 */
+	public void removeProject(final String sid) {
+		for (String key : attributes.stringPropertyNames()) {
+			if (key.startsWith(sid + KEY_SEPARATOR)) {
+				attributes.remove(key);
+				markChanged();
+			}
+		}
+	}
+
+	/**
+	 * Get the language of the TRiDaS of the project; 
+	 * for projects that where imported before this store was used it is retrieved from the project 
+	 * 
+	 * @param sid
+	 * @return The language code
+	 * @throws DataServiceException
+	 */
+	public String getLanguage(final String sid) throws DataServiceException {
+		String language = getAttribute(sid, LANGUAGE);
+		if (language == null) {
+			Project project = ProjectCache.getInstance().getProject(sid);
+			language = project.getTridasLanguage().getLanguage();
+			setAttribute(sid, LANGUAGE, language);
+		}
+		return language;
+	}
+
+	private synchronized void markChanged() {
+		changed = true;
+		if (file != null && saveTimer == null) {
+			// save in the background, not for every change
+			saveTimer = new Timer("ProjectAttributeStore", true);
+			saveTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					save();
+				}
+			}, SAVE_INTERVAL_MILLIS, SAVE_INTERVAL_MILLIS);
+		}
+	}
+
+	private void load() {
+		if (file == null || !file.exists())
+			return;
+
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			attributes.load(in);
+			LOGGER.info("Loaded " + attributes.size() + " project attributes from: " + file);
+		} catch (IOException e) {
+			// not fatal, they will be retrieved again
+			LOGGER.error("Failed to load the project attributes from: " + file, e);
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Save the attributes to the file (if any) when they have changed
+	 */
+	public synchronized void save() {
+		if (file == null || !changed)
+			return;
+
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			attributes.store(out, "DCCD project attributes by sid");
+			changed = false;
+		} catch (IOException e) {
+			LOGGER.error("Failed to save the project attributes to: " + file, e);
+		} finally {
+			closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Save and stop saving in the background
+	 */
+	public synchronized void shutdown() {
+		save();
+		if (saveTimer != null) {
+			saveTimer.cancel();
+			saveTimer = null;
+		}
+	}
+
+	private static void closeQuietly(final Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
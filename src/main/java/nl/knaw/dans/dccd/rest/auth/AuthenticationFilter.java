@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.auth;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.SecurityContext;
+
+import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+
+/**
+ * Authenticates the user once for each request, before it goes to the resource. 
+ * The result is available as the SecurityContext of the request 
+ * and as the request property DccdSecurityContext.PROPERTY_NAME.
+ * 
+ * A failing user service does not stop the request here; 
+ * it is reported when the resource asks for the user, just like before.
+ * 
+ * @author paulboon
+ *
+ */
+public class AuthenticationFilter implements ContainerRequestFilter {
+
+	public ContainerRequest filter(ContainerRequest request) {
+		DccdSecurityContext securityContext;
+		try {
+			String authHeader = request.getHeaderValue(HttpHeaders.AUTHORIZATION);
+			DccdUser user = Authenticator.authenticate(authHeader);
+			String scheme = Authenticator.isBearer(authHeader) ? TokenService.AUTHENTICATION_SCHEME : SecurityContext.BASIC_AUTH;
+			securityContext = new DccdSecurityContext(user, scheme, request.isSecure());
+		} catch (ServiceException e) {
+			securityContext = new DccdSecurityContext(e, request.isSecure());
+		}
+		request.setSecurityContext(securityContext);
+		request.getProperties().put(DccdSecurityContext.PROPERTY_NAME, securityContext);
+		return request;
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.auth;
+
+import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
+import nl.knaw.dans.dccd.application.services.DccdUserService;
+import nl.knaw.dans.dccd.application.services.UserServiceException;
+import nl.knaw.dans.dccd.authn.UsernamePasswordAuthentication;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.rest.cache.CredentialCache;
+
+import com.sun.jersey.core.util.Base64;
+
+/**
+ * Authenticates the user with the credentials from the Authorization header of a request, 
+ * either Basic (username and password) or Bearer (a token from the TokenService) 
+ * 
+ * @author paulboon
+ *
+ */
+public class Authenticator {
+	public static final String AUTHENTICATION_TYPE = "Basic ";
+	public static final String AUTHENTICATION_HDR_SEP = ":";
+
+	/**
+	 * Throw an AssertionError if this class or one of it's subclasses is ever
+	 * instantiated.
+	 */
+	protected Authenticator() {
+		throw new AssertionError("Instantiating utility class...");
+	}
+
+	/**
+	 * @param authHeader
+	 *            The value of the Authorization header, can be null
+	 * @return Authenticated user, but null if authentication failed
+	 * @throws ServiceException
+	 */
+	public static DccdUser authenticate(final String authHeader) throws ServiceException {
+		DccdUser user = null;
+		if (isBearer(authHeader)) {
+			// signed token, no need to check the password
+			try {
+				user = TokenService.getInstance().validateToken(
+						authHeader.substring(TokenService.AUTHENTICATION_TYPE.length()).trim());
+			} catch (UserServiceException e) {
+				throw new ServiceException(e);
+			}
+		} else if (authHeader != null && authHeader.startsWith(AUTHENTICATION_TYPE)) {
+			String decodedAuthHeader = Base64.base64Decode(authHeader
+					.substring(AUTHENTICATION_TYPE.length()));
+
+			if (decodedAuthHeader.contains(AUTHENTICATION_HDR_SEP)) {
+				String[] auth = decodedAuthHeader
+						.split(AUTHENTICATION_HDR_SEP);
+				String username = auth[0];
+				String password = auth[1];
+
+				// skip the password check when it was done recently
+				CredentialCache credentialCache = CredentialCache.getInstance();
+				String credentialKey = credentialCache.getKey(username, password);
+				user = credentialCache.get(credentialKey);
+				if (user == null) {
+					UsernamePasswordAuthentication authentication = DccdUserService
+							.getService().newUsernamePasswordAuthentication();
+					authentication.setUserId(username);
+					authentication.setCredentials(password);
+					DccdUserService.getService().authenticate(authentication);
+					user = (DccdUser) authentication.getUser();
+					if (user != null)
+						credentialCache.put(credentialKey, user);
+				}
+			}
+		}
+		return user;
+	}
+
+	/**
+	 * @param authHeader
+	 *            The value of the Authorization header, can be null
+	 * @return True if the header has a token instead of the username and password
+	 */
+	public static boolean isBearer(final String authHeader) {
+		return authHeader != null && authHeader.startsWith(TokenService.AUTHENTICATION_TYPE);
+	}
+}
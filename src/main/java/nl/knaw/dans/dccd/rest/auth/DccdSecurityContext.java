@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.auth;
+
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ws.rs.core.SecurityContext;
+
+import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.model.DccdUser.Role;
+
+/**
+ * The result of authenticating the user of a request, 
+ * it is determined once by the AuthenticationFilter and used by all resources.
+ * 
+ * @author paulboon
+ *
+ */
+public class DccdSecurityContext implements SecurityContext {
+	/** Name of the request property that holds the context */
+	public static final String PROPERTY_NAME = DccdSecurityContext.class.getName();
+
+	private final DccdUser user;
+	private final ServiceException authenticationException;
+	private final boolean secure;
+	private final String authenticationScheme;
+	// the role names, computed once
+	private final Set<String> roles = new HashSet<String>();
+
+	/**
+	 * @param user
+	 *            The authenticated user, null for anonymous requests or when authentication failed
+	 * @param authenticationScheme
+	 *            For instance BASIC_AUTH, null when not authenticated
+	 * @param secure
+	 *            If the request was made using a secure channel
+	 */
+	public DccdSecurityContext(final DccdUser user, final String authenticationScheme, final boolean secure) {
+		this(user, null, authenticationScheme, secure);
+	}
+
+	/**
+	 * Authentication could not be done because the user service failed
+	 * 
+	 * @param authenticationException
+	 * @param secure
+	 */
+	public DccdSecurityContext(final ServiceException authenticationException, final boolean secure) {
+		this(null, authenticationException, null, secure);
+	}
+
+	private DccdSecurityContext(final DccdUser user, final ServiceException authenticationException, 
+			final String authenticationScheme, final boolean secure) {
+		this.user = user;
+		this.authenticationException = authenticationException;
+		this.authenticationScheme = user == null ? null : authenticationScheme;
+		this.secure = secure;
+		if (user != null && user.getRoles() != null) {
+			for (Role role : user.getRoles()) {
+				roles.add(role.toString());
+			}
+		}
+	}
+
+	/**
+	 * @return Authenticated user, but null if authentication failed
+	 * @throws ServiceException
+	 *             When the user service failed while authenticating
+	 */
+	public DccdUser getUser() throws ServiceException {
+		if (authenticationException != null)
+			throw authenticationException;
+		return user;
+	}
+
+	public boolean isAdmin() {
+		return isUserInRole(Role.ADMIN.toString());
+	}
+
+	public Principal getUserPrincipal() {
+		if (user == null)
+			return null;
+		final String name = user.getId();
+		return new Principal() {
+			public String getName() {
+				return name;
+			}
+		};
+	}
+
+	public boolean isUserInRole(String role) {
+		return roles.contains(role);
+	}
+
+	public boolean isSecure() {
+		return secure;
+	}
+
+	public String getAuthenticationScheme() {
+		return authenticationScheme;
+	}
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.auth;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import nl.knaw.dans.common.lang.user.User;
+import nl.knaw.dans.dccd.application.services.UserServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.rest.cache.UserDirectoryCache;
+import nl.knaw.dans.dccd.rest.util.EnrichmentExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jersey.core.util.Base64;
+
+/**
+ * Signed, expiring tokens with the user id, 
+ * so a request with a token can be authenticated without checking the password.
+ * 
+ * The token is the Base64 encoded user id and expiry time, 
+ * followed by a dot and the Base64 encoded HMAC-SHA256 signature of it. 
+ * All nodes that share the secret (system property 'dccd.rest.token.secret') can validate the tokens. 
+ * Without that property a random secret is used and the tokens are only valid on this node 
+ * until it is restarted.
+ * 
+ * The user itself (roles, organisation and account state) is taken from the UserDirectoryCache, 
+ * so the authorisation uses the complete user and a token of an account that is blocked 
+ * is refused as soon as the cached user has expired. 
+ * When the user is not cached it is looked up on the EnrichmentExecutor, 
+ * so the number of concurrent directory lookups is bounded and a slow directory fails the validation 
+ * after the timeout instead of holding the request.
+ * 
+ * @author paulboon
+ *
+ */
+public class TokenService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TokenService.class);
+
+	public static final String AUTHENTICATION_TYPE = "Bearer ";
+	public static final String AUTHENTICATION_SCHEME = "BEARER";
+
+	public static final long TTL_SECONDS = Long.getLong("dccd.rest.token.ttlSeconds", 3600L);
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final String CHARSET = "UTF-8";
+	private static final String FIELD_SEP = "\n";
+	private static final String SIGNATURE_SEP = ".";
+
+	private static TokenService instance = null;
+
+	private final SecretKeySpec key;
+
+	TokenService(final byte[] secret) {
+		this.key = new SecretKeySpec(secret, ALGORITHM);
+	}
+
+	public static synchronized TokenService getInstance() {
+		if (instance == null) {
+			String secret = System.getProperty("dccd.rest.token.secret");
+			byte[] secretBytes;
+			if (secret == null || secret.isEmpty()) {
+				LOGGER.warn("No dccd.rest.token.secret configured, tokens are only valid on this node");
+				secretBytes = new byte[32];
+				new SecureRandom().nextBytes(secretBytes);
+			} else {
+				secretBytes = toBytes(secret);
+			}
+			instance = new TokenService(secretBytes);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param user
+	 *            The authenticated user
+	 * @param expires
+	 *            The time (in milliseconds) when the token is no longer valid
+	 * @return The token
+	 */
+	public String createToken(final DccdUser user, final long expires) {
+		String payload = user.getId() + FIELD_SEP + expires;
+
+		return encode(toBytes(payload)) + SIGNATURE_SEP + encode(sign(payload));
+	}
+
+	/**
+	 * @param token
+	 * @return The user of the token, but null if it is not valid (anymore) or the account is not active
+	 * @throws UserServiceException
+	 */
+	public DccdUser validateToken(final String token) throws UserServiceException {
+		final String userId = getUserId(token);
+		if (userId == null)
+			return null;
+
+		DccdUser user = UserDirectoryCache.getInstance().get(userId);
+		if (user == null)
+			user = lookupUser(userId);
+		if (user == null || !User.State.ACTIVE.equals(user.getState()))
+			return null;
+		return user;
+	}
+
+	/**
+	 * Get the user from the directory, but not longer than the enrichment timeout
+	 * 
+	 * @param userId
+	 * @return The user, null if not found
+	 * @throws UserServiceException
+	 *             When the directory failed, did not answer in time or too many lookups are waiting
+	 */
+	private DccdUser lookupUser(final String userId) throws UserServiceException {
+		Future<DccdUser> lookup = EnrichmentExecutor.getInstance().submit(new Callable<DccdUser>() {
+			public DccdUser call() throws UserServiceException {
+				return UserDirectoryCache.getInstance().getUser(userId);
+			}
+		});
+		try {
+			return EnrichmentExecutor.getResult(lookup, System.currentTimeMillis() + EnrichmentExecutor.TIMEOUT_MILLIS);
+		} catch (TimeoutException e) {
+			throw new UserServiceException("No user " + userId + " from the directory: " + e.getMessage());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UserServiceException)
+				throw (UserServiceException) e.getCause();
+			throw new UserServiceException(e.getCause());
+		}
+	}
+
+	/**
+	 * Check the signature and the expiry time
+	 * 
+	 * @param token
+	 * @return The id of the user of the token, but null if it is not valid (anymore)
+	 */
+	String getUserId(final String token) {
+		int sepPos = token.indexOf(SIGNATURE_SEP);
+		if (sepPos < 0)
+			return null;
+
+		String payload;
+		byte[] signature;
+		try {
+			payload = new String(Base64.decode(token.substring(0, sepPos)), CHARSET);
+			signature = Base64.decode(token.substring(sepPos + 1));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		} catch (RuntimeException e) {
+			// not Base64
+			return null;
+		}
+
+		// compare in constant time
+		if (!MessageDigest.isEqual(sign(payload), signature))
+			return null;
+
+		String[] fields = payload.split(FIELD_SEP, -1);
+		if (fields.length != 2 || fields[0].isEmpty())
+			return null;
+
+		long expires;
+		try {
+			expires = Long.parseLong(fields[1]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (System.currentTimeMillis() > expires)
+			return null;
+
+		return fields[0];
+	}
+
+	private byte[] sign(final String payload) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return mac.doFinal(toBytes(payload));
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform must have it
+			throw new IllegalStateException(e);
+		} catch (InvalidKeyException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String encode(final byte[] bytes) {
+		try {
+			return new String(Base64.encode(bytes), "US-ASCII");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] toBytes(final String str) {
+		try {
+			return str.getBytes(CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps track of the application wide caches, so their statistics can be reported
+ *
+ * @author paulboon
+ */
+public class CacheRegistry
+{
+    private static final List<CacheStatistics> CACHES = new CopyOnWriteArrayList<CacheStatistics>();
+
+    /**
+     * Throw an AssertionError if this class or one of it's subclasses is ever
+     * instantiated.
+     */
+    protected CacheRegistry()
+    {
+        throw new AssertionError("Instantiating utility class...");
+    }
+
+    public static void register(final CacheStatistics cache)
+    {
+        CACHES.add(cache);
+    }
+
+    public static List<CacheStatistics> getCaches()
+    {
+        return new ArrayList<CacheStatistics>(CACHES);
+    }
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+/**
+ * The counters of a cache, as shown by the status resource
+ *
+ * @author paulboon
+ */
+public interface CacheStatistics
+{
+    String getName();
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return Number of entries removed to make room or because they expired
+     */
+    long getEvictions();
+
+    int getSize();
+
+    /**
+     * @return The (estimated) total weight of the entries, for instance in bytes
+     */
+    long getWeight();
+}
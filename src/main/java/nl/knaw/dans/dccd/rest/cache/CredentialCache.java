@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+
+import nl.knaw.dans.dccd.model.DccdUser;
+
+/**
+ * Cache for users that where authenticated with their username and password, 
+ * so repeated requests with the same credentials don't need the user service to check the password again.
+ *
+ * The key is a salted hash of the credentials, so the passwords are not kept in memory. 
+ * The salt is random and only used in this process. 
+ * Only successful authentications are cached, and only for a short time. 
+ * When the account state of a user changes the entries for that user are removed.
+ *
+ * @author paulboon
+ */
+public class CredentialCache extends WeightedLruCache<String, DccdUser>
+{
+    public static final int MAX_ENTRIES = Integer.getInteger("dccd.rest.cache.credentials.maxEntries", 1000);
+    public static final long TTL_SECONDS = Long.getLong("dccd.rest.cache.credentials.ttlSeconds", 60L);
+
+    private static final int SALT_LENGTH = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final CredentialCache INSTANCE = new CredentialCache();
+
+    static
+    {
+        CacheRegistry.register(INSTANCE);
+    }
+
+    private final byte[] salt = new byte[SALT_LENGTH];
+
+    private CredentialCache()
+    {
+        super("credentials", MAX_ENTRIES, MAX_ENTRIES, TTL_SECONDS * 1000);
+        new SecureRandom().nextBytes(salt);
+    }
+
+    public static CredentialCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * @param username
+     * @param password
+     * @return The key for the credentials
+     */
+    public String getKey(final String username, final String password)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update((username + ":" + password).getBytes("UTF-8"));
+            return toHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // every Java platform must have it
+            throw new IllegalStateException(e);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Remove the entries of the user when its account state has changed
+     *
+     * @param user
+     *            The user as it is now
+     */
+    public void userChanged(final DccdUser user)
+    {
+        for (Map.Entry<String, DccdUser> entry : getEntries().entrySet())
+        {
+            DccdUser cachedUser = entry.getValue();
+            if (isSame(cachedUser.getId(), user.getId()) && !isSame(cachedUser.getState(), user.getState()))
+            {
+                remove(entry.getKey());
+            }
+        }
+    }
+
+    private static boolean isSame(final Object a, final Object b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String toHex(final byte[] bytes)
+    {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.knaw.dans.dccd.application.services.DataServiceException;
+import nl.knaw.dans.dccd.application.services.DccdDataService;
+import nl.knaw.dans.dccd.model.Project;
+
+import org.tridas.schema.TridasDerivedSeries;
+import org.tridas.schema.TridasElement;
+import org.tridas.schema.TridasMeasurementSeries;
+import org.tridas.schema.TridasObject;
+import org.tridas.schema.TridasProject;
+import org.tridas.schema.TridasRadius;
+import org.tridas.schema.TridasSample;
+import org.tridas.schema.TridasValues;
+
+/**
+ * Cache for the projects retrieved from the data service, 
+ * the weight is an approximation of the memory used by the TRiDaS in bytes.
+ *
+ * The cached projects are shared between requests and should not be changed; 
+ * the TRiDaS can be restricted with TridasPermissionRestrictor.getRestricted, which works on a copy.
+ * Entries are removed when the project is deleted or uploaded, 
+ * the time to live is a safety net for changes made by other applications (the DCCD webui).
+ * Every time a project is retrieved from the data service it gets a new version number, 
+ * so information derived from a cached project can be cached with that version.
+ *
+ * @author paulboon
+ */
+public class ProjectCache extends WeightedLruCache<String, ProjectCache.VersionedProject>
+{
+    public static final int MAX_ENTRIES = Integer.getInteger("dccd.rest.cache.project.maxEntries", 100);
+    public static final long MAX_BYTES = Long.getLong("dccd.rest.cache.project.maxBytes", 128L * 1024 * 1024);
+    public static final long TTL_SECONDS = Long.getLong("dccd.rest.cache.project.ttlSeconds", 300L);
+
+    // rough estimates of the memory used by the JAXB objects
+    private static final long PROJECT_BYTES = 16 * 1024;
+    private static final long ENTITY_BYTES = 2 * 1024;
+    private static final long VALUE_BYTES = 64;
+
+    private static final ProjectCache INSTANCE = new ProjectCache();
+
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    static
+    {
+        CacheRegistry.register(INSTANCE);
+    }
+
+    private ProjectCache()
+    {
+        super("project", MAX_ENTRIES, MAX_BYTES, TTL_SECONDS * 1000);
+    }
+
+    public static ProjectCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the project from the cache, or from the data service when it is not cached
+     *
+     * @param sid
+     *            The store id of the project
+     * @return The project, which must not be changed
+     * @throws DataServiceException
+     */
+    public Project getProject(final String sid) throws DataServiceException
+    {
+        return getVersionedProject(sid).getProject();
+    }
+
+    /**
+     * Get the project with its version from the cache, 
+     * or from the data service when it is not cached
+     *
+     * @param sid
+     *            The store id of the project
+     * @return The project and version
+     * @throws DataServiceException
+     */
+    public VersionedProject getVersionedProject(final String sid) throws DataServiceException
+    {
+        VersionedProject versionedProject = get(sid);
+        if (versionedProject == null)
+        {
+            // not synchronized; concurrent misses just retrieve it more than once
+            Project project = DccdDataService.getService().getProject(sid);
+            versionedProject = new VersionedProject(project, lastVersion.incrementAndGet());
+            put(sid, versionedProject);
+        }
+        return versionedProject;
+    }
+
+    /**
+     * Remove the project, because it has been changed or deleted
+     *
+     * @param sid
+     *            The store id of the project
+     */
+    public void invalidate(final String sid)
+    {
+        remove(sid);
+    }
+
+    @Override
+    protected long weigh(final VersionedProject versionedProject)
+    {
+        TridasProject tridasProject = versionedProject.getProject().getTridas();
+        if (tridasProject == null)
+            return PROJECT_BYTES;
+
+        long weight = PROJECT_BYTES;
+        for (TridasObject object : tridasProject.getObjects())
+        {
+            weight += weighObject(object);
+        }
+        for (TridasDerivedSeries series : tridasProject.getDerivedSeries())
+        {
+            weight += ENTITY_BYTES + weighValues(series.getValues());
+        }
+        return weight;
+    }
+
+    private long weighObject(final TridasObject object)
+    {
+        long weight = ENTITY_BYTES;
+        for (TridasObject subObject : object.getObjects())
+        {
+            weight += weighObject(subObject);
+        }
+        for (TridasElement element : object.getElements())
+        {
+            weight += ENTITY_BYTES;
+            for (TridasSample sample : element.getSamples())
+            {
+                weight += ENTITY_BYTES;
+                for (TridasRadius radius : sample.getRadiuses())
+                {
+                    weight += ENTITY_BYTES;
+                    for (TridasMeasurementSeries series : radius.getMeasurementSeries())
+                    {
+                        weight += ENTITY_BYTES + weighValues(series.getValues());
+                    }
+                }
+            }
+        }
+        return weight;
+    }
+
+    private long weighValues(final List<TridasValues> valuesList)
+    {
+        long weight = 0;
+        for (TridasValues values : valuesList)
+        {
+            weight += ENTITY_BYTES + VALUE_BYTES * values.getValues().size();
+        }
+        return weight;
+    }
+
+    /**
+     * A project as it was retrieved from the data service
+     */
+    public static class VersionedProject
+    {
+        private final Project project;
+        private final long version;
+
+        VersionedProject(final Project project, final long version)
+        {
+            this.project = project;
+            this.version = version;
+        }
+
+        public Project getProject()
+        {
+            return project;
+        }
+
+        /**
+         * @return A number that is different for every time the project was retrieved
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+import nl.knaw.dans.dccd.rest.util.DocumentFragment;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+/**
+ * Cache for the rendered public information of a project (or object) search result.
+ *
+ * An entry is valid as long as the project is not changed, 
+ * which is the case when the administrative state last change timestamp is the same.
+ * The permission default level is part of the key as well, because it determines what is public.
+ * The time to live limits the use of information that is not in the search result, 
+ * like the organisation of the owner.
+ *
+ * @author paulboon
+ */
+public class ProjectSummaryCache extends WeightedLruCache<String, DocumentFragment>
+{
+    public static final int MAX_ENTRIES = Integer.getInteger("dccd.rest.cache.summary.maxEntries", 10000);
+    public static final long MAX_BYTES = Long.getLong("dccd.rest.cache.summary.maxBytes", 16L * 1024 * 1024);
+    public static final long TTL_SECONDS = Long.getLong("dccd.rest.cache.summary.ttlSeconds", 600L);
+
+    private static final ProjectSummaryCache INSTANCE = new ProjectSummaryCache();
+
+    static
+    {
+        CacheRegistry.register(INSTANCE);
+    }
+
+    private ProjectSummaryCache()
+    {
+        super("projectSummary", MAX_ENTRIES, MAX_BYTES, TTL_SECONDS * 1000);
+    }
+
+    public static ProjectSummaryCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    @Override
+    protected long weigh(final DocumentFragment fragment)
+    {
+        return fragment.getWeight();
+    }
+
+    /**
+     * @param dccdSB
+     * @return The key for the search result
+     */
+    public static String getKey(final DccdSB dccdSB)
+    {
+        long lastChange = 0;
+        if (dccdSB.getAdministrativeStateLastChange() != null)
+            lastChange = dccdSB.getAdministrativeStateLastChange().getMillis();
+
+        // Note that the id differs from the pid for object search results
+        return dccdSB.getPid() + "|" + dccdSB.getId() + "|" + lastChange + "|" + dccdSB.getPermissionDefaultLevel();
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+/**
+ * Cache for the marshalled TRiDaS of the projects, 
+ * restricted to what the user is allowed to see and has requested.
+ *
+ * The document only depends on the version of the project (see ProjectCache), 
+ * the effective permission level of the user and the requested entity level, 
+ * so there are only a few variants of a project and these can be shared by all users.
+ * Documents larger than the maximum entry size are not cached, 
+ * they are only streamed to the client.
+ *
+ * @author paulboon
+ */
+public class TridasDocumentCache extends WeightedLruCache<String, byte[]>
+{
+    public static final int MAX_ENTRIES = Integer.getInteger("dccd.rest.cache.tridas.maxEntries", 500);
+    public static final long MAX_BYTES = Long.getLong("dccd.rest.cache.tridas.maxBytes", 64L * 1024 * 1024);
+    public static final int MAX_ENTRY_BYTES = Integer.getInteger("dccd.rest.cache.tridas.maxEntryBytes", 4 * 1024 * 1024);
+    public static final long TTL_SECONDS = Long.getLong("dccd.rest.cache.tridas.ttlSeconds", 300L);
+
+    /** The level used in the key when the complete TRiDaS may be downloaded */
+    public static final String COMPLETE = "complete";
+
+    private static final TridasDocumentCache INSTANCE = new TridasDocumentCache();
+
+    static
+    {
+        CacheRegistry.register(INSTANCE);
+    }
+
+    private TridasDocumentCache()
+    {
+        super("tridas", MAX_ENTRIES, MAX_BYTES, TTL_SECONDS * 1000);
+    }
+
+    public static TridasDocumentCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    @Override
+    protected long weigh(final byte[] document)
+    {
+        return document.length;
+    }
+
+    /**
+     * @param sid
+     *            The store id of the project
+     * @param version
+     *            The version of the project in the ProjectCache
+     * @param permittedLevel
+     *            The effective permission level, or COMPLETE when the user is allowed to download
+     * @param requestedLevel
+     *            The requested entity level, or null when not restricted to a level
+     * @return The key for the document
+     */
+    public static String getKey(final String sid, final long version, final String permittedLevel, final String requestedLevel)
+    {
+        return sid + "|" + version + "|" + permittedLevel + "|" + requestedLevel;
+    }
+}
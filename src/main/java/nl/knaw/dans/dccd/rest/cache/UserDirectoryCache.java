@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+import nl.knaw.dans.dccd.application.services.DccdUserService;
+import nl.knaw.dans.dccd.application.services.UserServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+
+/**
+ * Cache for the users from the user service (the directory), 
+ * so listing projects does not need a directory lookup for the owner of every project.
+ *
+ * The user service has no lookup for a specific set of users, 
+ * so the missing owners of a page are retrieved one at a time, concurrently 
+ * (see AbstractProjectResource.prefetchEnrichment); 
+ * retrieving all users would get the whole directory for every page that has a few new owners.
+ *
+ * @author paulboon
+ */
+public class UserDirectoryCache extends WeightedLruCache<String, DccdUser>
+{
+    public static final int MAX_ENTRIES = Integer.getInteger("dccd.rest.cache.user.maxEntries", 5000);
+    public static final long TTL_SECONDS = Long.getLong("dccd.rest.cache.user.ttlSeconds", 300L);
+
+    private static final UserDirectoryCache INSTANCE = new UserDirectoryCache();
+
+    static
+    {
+        CacheRegistry.register(INSTANCE);
+    }
+
+    private UserDirectoryCache()
+    {
+        super("userDirectory", MAX_ENTRIES, MAX_ENTRIES, TTL_SECONDS * 1000);
+    }
+
+    public static UserDirectoryCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Also lets the credential cache know, 
+     * because the account state of the user might have changed
+     */
+    @Override
+    public void put(final String userId, final DccdUser user)
+    {
+        super.put(userId, user);
+        CredentialCache.getInstance().userChanged(user);
+    }
+
+    /**
+     * @param userId
+     * @return The user, or null if the user service doesn't have it
+     * @throws UserServiceException
+     */
+    public DccdUser getUser(final String userId) throws UserServiceException
+    {
+        DccdUser user = get(userId);
+        if (user == null)
+        {
+            user = DccdUserService.getService().getUserById(userId);
+            if (user != null)
+                put(userId, user);
+        }
+        return user;
+    }
+}
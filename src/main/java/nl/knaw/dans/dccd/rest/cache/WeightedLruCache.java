@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache that is bounded by the number of entries 
+ * and by the total weight of the values, with an optional time to live.
+ *
+ * All methods are synchronized; the cached values should be immutable
+ * (or never be changed after they are put in the cache).
+ *
+ * @author paulboon
+ *
+ * @param <K>
+ *            The key
+ * @param <V>
+ *            The cached value
+ */
+public class WeightedLruCache<K, V> implements CacheStatistics
+{
+    private final String name;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long timeToLiveMillis;
+
+    // access ordered, the eldest is the least recently used
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private long weight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param name
+     *            For reporting the statistics
+     * @param maxEntries
+     *            Maximum number of entries
+     * @param maxWeight
+     *            Maximum total weight of the values
+     * @param timeToLiveMillis
+     *            How long an entry can be used, zero or less means no limit
+     */
+    public WeightedLruCache(final String name, final int maxEntries, final long maxWeight, final long timeToLiveMillis)
+    {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * The weight of a value, by default every value weighs 1
+     *
+     * @param value
+     * @return The weight
+     */
+    protected long weigh(final V value)
+    {
+        return 1;
+    }
+
+    /**
+     * @param key
+     * @return The cached value, or null if it is not in the cache (anymore)
+     */
+    public synchronized V get(final K key)
+    {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry))
+        {
+            removeEntry(key);
+            evictions++;
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Put the value in the cache, 
+     * a value that is heavier than the maximum weight is not cached.
+     *
+     * @param key
+     * @param value
+     */
+    public synchronized void put(final K key, final V value)
+    {
+        removeEntry(key);
+
+        long valueWeight = weigh(value);
+        if (valueWeight > maxWeight)
+            return;
+
+        entries.put(key, new Entry<V>(value, valueWeight, System.currentTimeMillis()));
+        weight += valueWeight;
+
+        // evict the least recently used until it fits
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while ((weight > maxWeight || entries.size() > maxEntries) && iterator.hasNext())
+        {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            weight -= eldest.getValue().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void remove(final K key)
+    {
+        removeEntry(key);
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return A copy of the cached values by key, including the expired ones
+     */
+    protected synchronized Map<K, V> getEntries()
+    {
+        Map<K, V> copy = new LinkedHashMap<K, V>();
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet())
+        {
+            copy.put(entry.getKey(), entry.getValue().value);
+        }
+        return copy;
+    }
+
+    private void removeEntry(final K key)
+    {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null)
+            weight -= entry.weight;
+    }
+
+    private boolean isExpired(final Entry<V> entry)
+    {
+        return timeToLiveMillis > 0 && System.currentTimeMillis() - entry.created > timeToLiveMillis;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    private static class Entry<V>
+    {
+        final V value;
+        final long weight;
+        final long created;
+
+        Entry(final V value, final long weight, final long created)
+        {
+            this.value = value;
+            this.weight = weight;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.XMLEventConsumer;
+
+import nl.knaw.dans.dccd.application.services.DataServiceException;
+import nl.knaw.dans.dccd.application.services.DccdDataService;
+
+/**
+ * The TRiDaS XML as it is stored, read from the datastream every time the events are written.
+ * 
+ * Only used when the id of the TRiDaS datastream is configured 
+ * with the system property dccd.rest.tridas.datastreamId
+ *
+ * @author paulboon
+ *
+ */
+public class StoredTridasEventSource implements TridasEventSource {
+	public static final String DATASTREAM_ID = System.getProperty("dccd.rest.tridas.datastreamId");
+
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	private final URL url;
+
+	public StoredTridasEventSource(final URL url) {
+		this.url = url;
+	}
+
+	/**
+	 * @return true if the stored TRiDaS can be used
+	 */
+	public static boolean isAvailable() {
+		return DATASTREAM_ID != null && !DATASTREAM_ID.trim().isEmpty();
+	}
+
+	/**
+	 * @param sid
+	 *            The store id of the project
+	 * @return The source for the stored TRiDaS of the project
+	 * @throws DataServiceException
+	 */
+	public static StoredTridasEventSource forProject(final String sid) throws DataServiceException {
+		return new StoredTridasEventSource(DccdDataService.getService().getFileURL(sid, DATASTREAM_ID.trim()));
+	}
+
+	@Override
+	public void writeTo(XMLEventConsumer consumer) throws XMLStreamException, IOException {
+		InputStream input = url.openStream();
+		try {
+			XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(input);
+			try {
+				while (reader.hasNext()) {
+					consumer.add(reader.nextEvent());
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventConsumer;
+
+import nl.knaw.dans.dccd.model.ProjectPermissionLevel;
+
+import org.tridas.schema.TridasDerivedSeries;
+import org.tridas.schema.TridasElement;
+import org.tridas.schema.TridasGenericField;
+import org.tridas.schema.TridasMeasurementSeries;
+import org.tridas.schema.TridasObject;
+import org.tridas.schema.TridasRadius;
+import org.tridas.schema.TridasSample;
+import org.tridas.schema.TridasValues;
+
+/**
+ * Applies the rules of a TridasPermissionRestrictor (or TridasRequestedLevelRestrictor) 
+ * to the StAX events of a TRiDaS document, without unmarshalling it.
+ * 
+ * The placeholders and notes are generic fields, which come before the child entities they replace, 
+ * but the number of placeholders is only known at the end of the entity. 
+ * So when an entity gets placeholders, what follows its first child entity is held back until the entity ends; 
+ * the removed entities are counted and dropped, only the (restricted) entities that are kept are held. 
+ * For the project and the objects this is little, because their children are the ones that are removed. 
+ * Everything else is written as it comes in, and the upstream events are written only once.
+ * 
+ * Restrictors can be chained, just like the restrictors are applied one after the other on a TridasProject; 
+ * the chain still reads the upstream events once.
+ *
+ * @author paulboon
+ *
+ */
+public class StreamingTridasRestrictor implements TridasEventSource {
+	private static final String ROOT = "tridas";
+	private static final String PROJECT = "project";
+	private static final String OBJECT = "object";
+	private static final String ELEMENT = "element";
+	private static final String SAMPLE = "sample";
+	private static final String RADIUS = "radius";
+	private static final String MEASUREMENT_SERIES = "measurementSeries";
+	private static final String DERIVED_SERIES = "derivedSeries";
+	private static final String VALUES = "values";
+	private static final String GENERIC_FIELD = "genericField";
+	private static final String NAME_ATTRIBUTE = "name";
+
+	/** The child entities, these come after the generic fields */
+	private static final Map<String, Set<String>> CHILD_ENTITIES = new HashMap<String, Set<String>>();
+	/** What restrictToOpenAccess removes */
+	private static final Map<String, Set<String>> OPEN_ACCESS_REMOVED = new HashMap<String, Set<String>>();
+	/** For the placeholder labels */
+	@SuppressWarnings("rawtypes")
+	private static final Map<String, Class> ENTITY_CLASSES = new HashMap<String, Class>();
+
+	static {
+		CHILD_ENTITIES.put(PROJECT, asSet(OBJECT, DERIVED_SERIES));
+		CHILD_ENTITIES.put(OBJECT, asSet(ELEMENT, OBJECT));
+		CHILD_ENTITIES.put(ELEMENT, asSet(SAMPLE));
+		CHILD_ENTITIES.put(SAMPLE, asSet(RADIUS));
+		CHILD_ENTITIES.put(RADIUS, asSet(MEASUREMENT_SERIES));
+		CHILD_ENTITIES.put(MEASUREMENT_SERIES, asSet(VALUES));
+		CHILD_ENTITIES.put(DERIVED_SERIES, asSet(VALUES));
+
+		OPEN_ACCESS_REMOVED.put(PROJECT, asSet("createdTimestamp", "lastModifiedTimestamp", "comments", 
+				"description", "period", "commissioner", "reference", "research", "file", 
+				GENERIC_FIELD, DERIVED_SERIES));
+		OPEN_ACCESS_REMOVED.put(OBJECT, asSet("createdTimestamp", "lastModifiedTimestamp", "identifier", 
+				"comments", "coverage", "creator", "description", "linkSeries", "location", "owner", "file", 
+				GENERIC_FIELD, ELEMENT));
+
+		ENTITY_CLASSES.put(OBJECT, TridasObject.class);
+		ENTITY_CLASSES.put(ELEMENT, TridasElement.class);
+		ENTITY_CLASSES.put(SAMPLE, TridasSample.class);
+		ENTITY_CLASSES.put(RADIUS, TridasRadius.class);
+		ENTITY_CLASSES.put(MEASUREMENT_SERIES, TridasMeasurementSeries.class);
+		ENTITY_CLASSES.put(DERIVED_SERIES, TridasDerivedSeries.class);
+		ENTITY_CLASSES.put(VALUES, TridasValues.class);
+	}
+
+	private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+	private final TridasEventSource upstream;
+	private final TridasPermissionRestrictor restrictor;
+	private final ProjectPermissionLevel level;
+
+	/**
+	 * @param upstream
+	 *            The events to restrict
+	 * @param restrictor
+	 *            Determines the notes and placeholders
+	 * @param level
+	 */
+	public StreamingTridasRestrictor(final TridasEventSource upstream, 
+			final TridasPermissionRestrictor restrictor, final ProjectPermissionLevel level) {
+		this.upstream = upstream;
+		this.restrictor = restrictor;
+		this.level = level;
+	}
+
+	@Override
+	public void writeTo(XMLEventConsumer consumer) throws XMLStreamException, IOException {
+		if (level == ProjectPermissionLevel.VALUES) {
+			// allow all
+			upstream.writeTo(consumer);
+			return;
+		}
+
+		upstream.writeTo(new Restricter(consumer));
+	}
+
+	private static Set<String> asSet(String... names) {
+		return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(names)));
+	}
+
+	private static class Frame {
+		final StartElement start;
+		final String name;
+		boolean entity = false;
+		boolean openAccess = false;
+		Set<String> removed = Collections.emptySet();
+		/** The removed child entities that get placeholders */
+		List<String> placeholderChildren = Collections.emptyList();
+		List<TridasGenericField> notes = Collections.emptyList();
+		/** The placeholders and notes still have to be written */
+		boolean pending = false;
+		Map<String, Integer> childCounts = null;
+		/** What came after the first child entity, when the placeholders are not known yet */
+		List<XMLEvent> heldBack = null;
+
+		Frame(StartElement start) {
+			this.start = start;
+			this.name = start.getName().getLocalPart();
+		}
+
+		void countChild(String childName) {
+			if (childCounts == null)
+				childCounts = new HashMap<String, Integer>();
+			Integer count = childCounts.get(childName);
+			childCounts.put(childName, count == null ? 1 : count + 1);
+		}
+
+		int getChildCount(String childName) {
+			Integer count = childCounts == null ? null : childCounts.get(childName);
+			return count == null ? 0 : count;
+		}
+	}
+
+	/**
+	 * Writes the restricted document
+	 */
+	private class Restricter implements XMLEventConsumer {
+		private final XMLEventConsumer consumer;
+		private final LinkedList<Frame> frames = new LinkedList<Frame>();
+		/** The entities that are holding back events, innermost first */
+		private final LinkedList<Frame> holding = new LinkedList<Frame>();
+		private int skipDepth = 0;
+
+		Restricter(XMLEventConsumer consumer) {
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void add(XMLEvent event) throws XMLStreamException {
+			if (event.isStartElement()) {
+				Frame parent = frames.peek();
+				Frame frame = startElement(event.asStartElement());
+				if (skipDepth > 0) {
+					skipDepth++;
+					return;
+				}
+				if (frame.entity && parent != null && parent.entity)
+					parent.countChild(frame.name);
+				if (parent != null && parent.pending && parent.heldBack == null && isChildEntity(parent, frame.name)) {
+					if (parent.placeholderChildren.isEmpty()) {
+						writePending(parent);
+					} else {
+						// the placeholders can only be written when all children are counted
+						parent.heldBack = new ArrayList<XMLEvent>();
+						holding.push(parent);
+					}
+				}
+				if (parent != null && parent.removed.contains(frame.name)) {
+					skipDepth = 1;
+					return;
+				}
+				if (frame.entity)
+					restrict(frame, parent);
+				write(event);
+			} else if (event.isEndElement()) {
+				Frame frame = frames.pop();
+				if (skipDepth > 0) {
+					skipDepth--;
+					return;
+				}
+				if (frame.heldBack != null) {
+					holding.pop();
+					writePending(frame);
+					for (XMLEvent heldEvent : frame.heldBack) {
+						write(heldEvent);
+					}
+					frame.heldBack = null;
+				} else if (frame.pending) {
+					writePending(frame);
+				}
+				write(event);
+			} else if (skipDepth == 0) {
+				write(event);
+			}
+		}
+
+		private Frame startElement(StartElement start) {
+			Frame parent = frames.peek();
+			Frame frame = new Frame(start);
+			if (parent == null) {
+				// the root, a project or the tridas document with projects
+				frame.entity = PROJECT.equals(frame.name);
+			} else if (ROOT.equals(parent.name) && frames.size() == 1) {
+				frame.entity = PROJECT.equals(frame.name);
+			} else if (parent.entity) {
+				frame.entity = isChildEntity(parent, frame.name);
+			}
+			frames.push(frame);
+			return frame;
+		}
+
+		private void write(XMLEvent event) throws XMLStreamException {
+			if (holding.isEmpty())
+				consumer.add(event);
+			else
+				holding.peek().heldBack.add(event);
+		}
+
+		private boolean isChildEntity(Frame frame, String name) {
+			Set<String> childEntities = CHILD_ENTITIES.get(frame.name);
+			return childEntities != null && childEntities.contains(name);
+		}
+
+		/**
+		 * Determine what is removed from the entity and what is added in its place, 
+		 * the same way as the restrictor does on the TridasProject
+		 */
+		private void restrict(Frame frame, Frame parent) {
+			if (PROJECT.equals(frame.name)) {
+				if (level == ProjectPermissionLevel.MINIMAL) {
+					restrictToOpenAccess(frame);
+				} else {
+					frame.removed = new HashSet<String>();
+					frame.placeholderChildren = new ArrayList<String>();
+					if (restrictor.isRemovingObjects(level)) {
+						frame.removed.add(OBJECT);
+						frame.placeholderChildren.add(OBJECT);
+					}
+					if (!ProjectPermissionLevel.SERIES.isPermittedBy(level)) {
+						frame.removed.add(DERIVED_SERIES);
+						frame.placeholderChildren.add(DERIVED_SERIES);
+					}
+					frame.notes = Collections.singletonList(restrictor.createIncompleteTridasNote(level));
+					frame.pending = true;
+				}
+			} else if (OBJECT.equals(frame.name)) {
+				if (parent.openAccess || !ProjectPermissionLevel.OBJECT.isPermittedBy(level))
+					restrictToOpenAccess(frame);
+				else
+					restrictChildren(frame, ELEMENT, ProjectPermissionLevel.ELEMENT);
+			} else if (ELEMENT.equals(frame.name)) {
+				restrictChildren(frame, SAMPLE, ProjectPermissionLevel.SAMPLE);
+			} else if (SAMPLE.equals(frame.name)) {
+				restrictChildren(frame, RADIUS, ProjectPermissionLevel.RADIUS);
+			} else if (RADIUS.equals(frame.name)) {
+				restrictChildren(frame, MEASUREMENT_SERIES, ProjectPermissionLevel.SERIES);
+			} else if (MEASUREMENT_SERIES.equals(frame.name) || DERIVED_SERIES.equals(frame.name)) {
+				restrictChildren(frame, VALUES, ProjectPermissionLevel.VALUES);
+			}
+		}
+
+		private void restrictToOpenAccess(Frame frame) {
+			frame.openAccess = true;
+			frame.removed = OPEN_ACCESS_REMOVED.get(frame.name);
+			frame.notes = Collections.singletonList(restrictor.createIncompleteTridasNoteForOpenAccess());
+			frame.pending = true;
+		}
+
+		private void restrictChildren(Frame frame, String childName, ProjectPermissionLevel childLevel) {
+			if (!childLevel.isPermittedBy(level)) {
+				frame.removed = Collections.singleton(childName);
+				frame.placeholderChildren = Collections.singletonList(childName);
+				frame.pending = true;
+			}
+		}
+
+		/**
+		 * Write the placeholders and notes as generic fields, in the namespace of the entity
+		 */
+		private void writePending(Frame frame) throws XMLStreamException {
+			List<TridasGenericField> genericFields = new ArrayList<TridasGenericField>();
+			for (String childName : frame.placeholderChildren) {
+				String entityType = TridasPermissionRestrictor.MAP_ENTITY_TO_DISPLAYSTRING.get(ENTITY_CLASSES.get(childName));
+				genericFields.addAll(restrictor.createRemovedTridasEntityPlaceholders(entityType, 
+						frame.getChildCount(childName), level));
+			}
+			genericFields.addAll(frame.notes);
+
+			QName entityName = frame.start.getName();
+			for (TridasGenericField genericField : genericFields) {
+				write(EVENT_FACTORY.createStartElement(entityName.getPrefix(), 
+						entityName.getNamespaceURI(), GENERIC_FIELD));
+				write(EVENT_FACTORY.createAttribute(NAME_ATTRIBUTE, genericField.getName()));
+				write(EVENT_FACTORY.createCharacters(genericField.getValue()));
+				write(EVENT_FACTORY.createEndElement(entityName.getPrefix(), 
+						entityName.getNamespaceURI(), GENERIC_FIELD));
+			}
+			frame.pending = false;
+		}
+	}
+}
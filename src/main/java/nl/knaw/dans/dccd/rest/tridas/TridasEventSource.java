@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.XMLEventConsumer;
+
+/**
+ * A TRiDaS document as a sequence of StAX events.
+ *
+ * The events can be written more than once, 
+ * which allows streaming processing that needs to look at the document before writing it.
+ *
+ * @author paulboon
+ *
+ */
+public interface TridasEventSource {
+
+	/**
+	 * Write all events of the document, from start to end document
+	 * 
+	 * @param consumer
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	void writeTo(XMLEventConsumer consumer) throws XMLStreamException, IOException;
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventConsumer;
+
+import nl.knaw.dans.dccd.rest.cache.TridasDocumentCache;
+import nl.knaw.dans.dccd.rest.util.CapturingOutputStream;
+
+/**
+ * Writes the events of a TRiDaS document to the response, UTF-8 encoded.
+ * 
+ * When a cache key is given, the written bytes are also kept 
+ * and put in the TridasDocumentCache, unless the document is too large.
+ *
+ * @author paulboon
+ *
+ */
+public class TridasEventStreamingOutput implements StreamingOutput {
+	private static final String ENCODING = "UTF-8";
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+	private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+	private final TridasEventSource source;
+	private final String cacheKey;
+
+	/**
+	 * @param source
+	 *            The TRiDaS to write
+	 * @param cacheKey
+	 *            The key for the TridasDocumentCache, or null if it should not be cached
+	 */
+	public TridasEventStreamingOutput(final TridasEventSource source, final String cacheKey) {
+		this.source = source;
+		this.cacheKey = cacheKey;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		CapturingOutputStream capturingOutput = null;
+		if (cacheKey != null) {
+			capturingOutput = new CapturingOutputStream(output, TridasDocumentCache.MAX_ENTRY_BYTES);
+			output = capturingOutput;
+		}
+
+		try {
+			final XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(output, ENCODING);
+			source.writeTo(new XMLEventConsumer() {
+				public void add(XMLEvent event) throws XMLStreamException {
+					if (event.isStartDocument()) {
+						// the stored document might use another encoding
+						StartDocument startDocument = (StartDocument) event;
+						event = EVENT_FACTORY.createStartDocument(ENCODING, startDocument.getVersion());
+					}
+					writer.add(event);
+				}
+			});
+			writer.flush();
+			writer.close();
+		} catch (XMLStreamException e) {
+			e.printStackTrace();
+			// Note that the client might already have received part of the document
+			throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+		}
+
+		// only complete documents are cached
+		if (capturingOutput != null) {
+			byte[] document = capturingOutput.getCaptured();
+			if (document != null)
+				TridasDocumentCache.getInstance().put(cacheKey, document);
+		}
+	}
+}
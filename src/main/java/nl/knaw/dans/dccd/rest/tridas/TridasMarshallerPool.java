@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import nl.knaw.dans.dccd.tridas.TridasNamespacePrefixMapper;
+
+/**
+ * Application wide JAXB context for the TRiDaS schema
+ * and a pool of marshallers that are configured for our TRiDaS output.
+ *
+ * Creating the context scans the whole schema package, so we only want to do that once.
+ * The context is thread safe, but the marshallers are not;
+ * they are handed out to one request at a time and returned afterwards.
+ *
+ * Only the number of idle marshallers is bounded; borrowing never blocks,
+ * when none is idle a new one is created, so under peak load there can be
+ * as many marshallers as concurrent requests.
+ * The extra ones are dropped when they are given back.
+ *
+ * @author paulboon
+ *
+ */
+public class TridasMarshallerPool {
+	public static final String TRIDAS_SCHEMA_PACKAGE = "org.tridas.schema";
+	public static final String NAMESPACE_PREFIX_MAPPER_PROPERTY = "com.sun.xml.bind.namespacePrefixMapper";
+
+	/**
+	 * Maximum number of idle marshallers kept for reuse
+	 */
+	public static final int MAX_IDLE_MARSHALLERS =
+			Integer.getInteger("dccd.rest.tridas.marshallerPoolSize", 16);
+
+	private static TridasMarshallerPool instance = null;
+
+	private final JAXBContext jaxbContext;
+	private final BlockingQueue<Marshaller> idleMarshallers;
+
+	TridasMarshallerPool(final int maxIdle) throws JAXBException {
+		// can it find the schema, and why not part of the lib
+		jaxbContext = JAXBContext.newInstance(TRIDAS_SCHEMA_PACKAGE);
+		idleMarshallers = new ArrayBlockingQueue<Marshaller>(maxIdle);
+	}
+
+	/**
+	 * Get the pool, it is created (and the JAXB context with it) on first use
+	 *
+	 * @return The application wide pool
+	 * @throws JAXBException
+	 */
+	public static synchronized TridasMarshallerPool getInstance() throws JAXBException {
+		if (instance == null) {
+			instance = new TridasMarshallerPool(MAX_IDLE_MARSHALLERS);
+		}
+		return instance;
+	}
+
+	/**
+	 * Create the context and a first marshaller,
+	 * so the first request does not have to pay for it
+	 *
+	 * @throws JAXBException
+	 */
+	public static void warmUp() throws JAXBException {
+		TridasMarshallerPool pool = getInstance();
+		pool.release(pool.borrow());
+	}
+
+	public JAXBContext getJaxbContext() {
+		return jaxbContext;
+	}
+
+	/**
+	 * Get a configured marshaller, must be given back with release.
+	 * A new one is created when there is no idle marshaller
+	 *
+	 * @return The marshaller
+	 * @throws JAXBException
+	 */
+	public Marshaller borrow() throws JAXBException {
+		Marshaller marshaller = idleMarshallers.poll();
+		if (marshaller == null) {
+			marshaller = createMarshaller();
+		}
+		return marshaller;
+	}
+
+	/**
+	 * Give the marshaller back to the pool,
+	 * when there are enough idle ones it is just dropped
+	 *
+	 * @param marshaller
+	 */
+	public void release(final Marshaller marshaller) {
+		if (marshaller != null) {
+			idleMarshallers.offer(marshaller);
+		}
+	}
+
+	/**
+	 * Marshal using a pooled marshaller
+	 *
+	 * @param tridas
+	 * @param writer
+	 * @throws JAXBException
+	 */
+	public void marshal(final Object tridas, final Writer writer) throws JAXBException {
+		Marshaller marshaller = borrow();
+		try {
+			marshaller.marshal(tridas, writer);
+		} finally {
+			release(marshaller);
+		}
+	}
+
+	/**
+	 * Marshal using a pooled marshaller, the bytes are UTF-8 encoded
+	 *
+	 * @param tridas
+	 * @param os
+	 * @throws JAXBException
+	 */
+	public void marshal(final Object tridas, final OutputStream os) throws JAXBException {
+		Marshaller marshaller = borrow();
+		try {
+			marshaller.marshal(tridas, os);
+		} finally {
+			release(marshaller);
+		}
+	}
+
+	private Marshaller createMarshaller() throws JAXBException {
+		Marshaller marshaller = jaxbContext.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+		marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+		// improve the namespace mapping
+		marshaller.setProperty(NAMESPACE_PREFIX_MAPPER_PROPERTY, new TridasNamespacePrefixMapper());
+		return marshaller;
+	}
+}
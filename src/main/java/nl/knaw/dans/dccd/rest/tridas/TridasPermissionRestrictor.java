@@ -1,5 +1,6 @@
 package nl.knaw.dans.dccd.rest.tridas;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +36,21 @@ public class TridasPermissionRestrictor {
 		        put(TridasValues.class, "values");
 		    }});
 
+	/**
+	 * Same as restrictToPermitted, but on a copy of the entity structure; 
+	 * the given tridas is not changed and can be shared (cached)
+	 * 
+	 * @param tridasProject
+	 * @param level
+	 * @return The restricted copy
+	 */
+	public TridasProject getRestricted(TridasProject tridasProject, ProjectPermissionLevel level)
+	{
+		TridasProject restricted = TridasStructureCopier.copy(tridasProject);
+		restrictToPermitted(restricted, level);
+		return restricted;
+	}
+
 	/**
 	 * Remove entities (or attributes) we are not permitted to see. 
 	 * Also add placeholders to indicate that things have been removed and possibly 
@@ -210,11 +226,29 @@ public class TridasPermissionRestrictor {
 	
 	protected void addPlaceholders(ITridasGeneric entity, String replaceEntityType,  int numToReplace, ProjectPermissionLevel level)
 	{
+		entity.getGenericFields().addAll(createRemovedTridasEntityPlaceholders(replaceEntityType, numToReplace, level));
+	}
+
+	protected List<TridasGenericField> createRemovedTridasEntityPlaceholders(String replaceEntityType,  int numToReplace, ProjectPermissionLevel level)
+	{
+		List<TridasGenericField> placeholders = new ArrayList<TridasGenericField>(numToReplace);
 		for(int i = 0; i < numToReplace; i++)
 		{
 			String label = String.format("(%s) %d of %d ", replaceEntityType, i+1, numToReplace);
-			entity.getGenericFields().add(createRemovedTridasEntityPlaceholder(label, level));
+			placeholders.add(createRemovedTridasEntityPlaceholder(label, level));
 		}
+		return placeholders;
+	}
+
+	/**
+	 * Are the objects of the project removed (instead of restricted to open access) 
+	 * 
+	 * @param level
+	 * @return
+	 */
+	protected boolean isRemovingObjects(ProjectPermissionLevel level)
+	{
+		return false;
 	}
 
 	protected void restrictToPermitted(TridasObject object, ProjectPermissionLevel level)
@@ -286,7 +320,7 @@ public class TridasPermissionRestrictor {
 		List<TridasValues> values = serie.getValues();
 		if(!ProjectPermissionLevel.VALUES.isPermittedBy(level))
 		{
-			String replaceEntityType = MAP_ENTITY_TO_DISPLAYSTRING.get(values.getClass());
+			String replaceEntityType = MAP_ENTITY_TO_DISPLAYSTRING.get(TridasValues.class);
 			addPlaceholders(serie, replaceEntityType, values.size(), level);
 			values.clear();
 		}
@@ -297,7 +331,7 @@ public class TridasPermissionRestrictor {
 		List<TridasValues> values = serie.getValues();
 		if(!ProjectPermissionLevel.VALUES.isPermittedBy(level))
 		{
-			String replaceEntityType = MAP_ENTITY_TO_DISPLAYSTRING.get(values.getClass());
+			String replaceEntityType = MAP_ENTITY_TO_DISPLAYSTRING.get(TridasValues.class);
 			addPlaceholders(serie, replaceEntityType, values.size(), level);
 			values.clear();
 		}
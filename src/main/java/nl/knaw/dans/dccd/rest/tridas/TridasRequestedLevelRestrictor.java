@@ -72,6 +72,11 @@ public class TridasRequestedLevelRestrictor extends TridasPermissionRestrictor
 		}
 	}
 	
+	protected boolean isRemovingObjects(ProjectPermissionLevel level)
+	{
+		return level == ProjectPermissionLevel.PROJECT;
+	}
+
 	private void removeObjects(TridasProject tridasProject, ProjectPermissionLevel level)
 	{
 		List<TridasObject> objects = tridasProject.getObjects();
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBException;
+
+import nl.knaw.dans.dccd.rest.cache.TridasDocumentCache;
+import nl.knaw.dans.dccd.rest.util.CapturingOutputStream;
+
+/**
+ * Writes the TRiDaS XML directly to the response while it is being marshalled,
+ * instead of building the complete document in memory first.
+ * 
+ * When a cache key is given, the written bytes are also kept 
+ * and put in the TridasDocumentCache, unless the document is too large.
+ *
+ * @author paulboon
+ *
+ */
+public class TridasStreamingOutput implements StreamingOutput {
+	private final Object tridas;
+	private final String cacheKey;
+
+	/**
+	 * @param tridas
+	 *            The TRiDaS (JAXB) object to marshal, normally a TridasProject
+	 */
+	public TridasStreamingOutput(final Object tridas) {
+		this(tridas, null);
+	}
+
+	/**
+	 * @param tridas
+	 *            The TRiDaS (JAXB) object to marshal, normally a TridasProject
+	 * @param cacheKey
+	 *            The key for the TridasDocumentCache, or null if it should not be cached
+	 */
+	public TridasStreamingOutput(final Object tridas, final String cacheKey) {
+		this.tridas = tridas;
+		this.cacheKey = cacheKey;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		CapturingOutputStream capturingOutput = null;
+		if (cacheKey != null) {
+			capturingOutput = new CapturingOutputStream(output, TridasDocumentCache.MAX_ENTRY_BYTES);
+			output = capturingOutput;
+		}
+
+		try {
+			TridasMarshallerPool.getInstance().marshal(tridas, output);
+		} catch (JAXBException e) {
+			e.printStackTrace();
+			// Note that the client might already have received part of the document
+			throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+		}
+
+		// only complete documents are cached
+		if (capturingOutput != null) {
+			byte[] document = capturingOutput.getCaptured();
+			if (document != null)
+				TridasDocumentCache.getInstance().put(cacheKey, document);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.tridas.schema.TridasDerivedSeries;
+import org.tridas.schema.TridasElement;
+import org.tridas.schema.TridasMeasurementSeries;
+import org.tridas.schema.TridasObject;
+import org.tridas.schema.TridasProject;
+import org.tridas.schema.TridasRadius;
+import org.tridas.schema.TridasSample;
+
+/**
+ * Copies the entity structure of a TRiDaS project, 
+ * so it can be restricted without changing the original.
+ *
+ * The entities (project, objects, elements, samples, radiuses and series) are copied 
+ * and get their own lists, everything else (like the values and locations) is shared with the original.
+ * This is enough for the restrictors, because they only change the fields and lists of the entities.
+ *
+ * The fields are read directly, so the original is not changed by lazily created lists 
+ * and can be shared by concurrent requests.
+ *
+ * @author paulboon
+ *
+ */
+public class TridasStructureCopier {
+	private static final Class<?>[] ENTITY_CLASSES = { 
+		TridasProject.class, 
+		TridasObject.class, 
+		TridasElement.class, 
+		TridasSample.class, 
+		TridasRadius.class, 
+		TridasMeasurementSeries.class, 
+		TridasDerivedSeries.class 
+	};
+
+	private static final Map<Class<?>, List<Field>> FIELDS_BY_CLASS = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+	public static TridasProject copy(final TridasProject tridasProject) {
+		return (TridasProject) copyEntity(tridasProject);
+	}
+
+	private static Object copyEntity(final Object entity) {
+		try {
+			Object copy = entity.getClass().newInstance();
+			for (Field field : getFields(entity.getClass())) {
+				Object value = field.get(entity);
+				if (value instanceof List) {
+					value = copyList((List<?>) value);
+				}
+				field.set(copy, value);
+			}
+			return copy;
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Could not copy " + entity.getClass().getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not copy " + entity.getClass().getName(), e);
+		}
+	}
+
+	private static List<Object> copyList(final List<?> list) {
+		List<Object> copy = new ArrayList<Object>(list.size());
+		for (Object item : list) {
+			if (isEntity(item))
+				copy.add(copyEntity(item));
+			else
+				copy.add(item);
+		}
+		return copy;
+	}
+
+	private static boolean isEntity(final Object item) {
+		if (item == null)
+			return false;
+		for (Class<?> entityClass : ENTITY_CLASSES) {
+			if (entityClass.isInstance(item))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param type
+	 * @return The instance fields of the class and its superclasses, accessible
+	 */
+	private static List<Field> getFields(final Class<?> type) {
+		List<Field> fields = FIELDS_BY_CLASS.get(type);
+		if (fields == null) {
+			fields = new ArrayList<Field>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers()))
+						continue;
+					field.setAccessible(true);
+					fields.add(field);
+				}
+			}
+			FIELDS_BY_CLASS.put(type, fields);
+		}
+		return fields;
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+/**
+ * Implements the convenience methods of the DocumentWriter
+ *
+ * @author paulboon
+ */
+public abstract class AbstractDocumentWriter implements DocumentWriter
+{
+    public void element(final String name, final String text)
+    {
+        startElement(name);
+        characters(text);
+        endElement();
+    }
+
+    public void elementOptional(final String name, final String text)
+    {
+        if (text != null && !text.trim().isEmpty())
+            element(name, text);
+    }
+
+    public void fragment(final DocumentFragment fragment)
+    {
+        fragment.replay(this);
+    }
+}
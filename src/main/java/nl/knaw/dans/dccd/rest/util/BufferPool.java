@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of byte buffers for copying streams,
+ * so large downloads don't allocate a new buffer for every request.
+ *
+ * @author paulboon
+ */
+public class BufferPool
+{
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_IDLE = 32;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IDLE);
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> idleBuffers;
+
+    public BufferPool(final int bufferSize, final int maxIdle)
+    {
+        this.bufferSize = bufferSize;
+        this.idleBuffers = new ArrayBlockingQueue<byte[]>(maxIdle);
+    }
+
+    /**
+     * @return The application wide pool
+     */
+    public static BufferPool getShared()
+    {
+        return SHARED;
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Get a buffer, must be given back with release
+     *
+     * @return The buffer
+     */
+    public byte[] borrow()
+    {
+        byte[] buffer = idleBuffers.poll();
+        if (buffer == null)
+        {
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+
+    /**
+     * Give the buffer back, when there are enough idle ones it is just dropped
+     *
+     * @param buffer
+     */
+    public void release(final byte[] buffer)
+    {
+        if (buffer != null && buffer.length == bufferSize)
+        {
+            idleBuffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+/**
+ * A single HTTP byte range (RFC 2616 section 14.35),
+ * with inclusive first and last byte positions.
+ *
+ * Only one range per request is supported;
+ * multiple ranges would need a multipart/byteranges response.
+ *
+ * @author paulboon
+ */
+public class ByteRange
+{
+    public static final String BYTES_UNIT = "bytes";
+
+    private final long first;
+    private final long last;
+    private final long total;
+
+    public ByteRange(final long first, final long last, final long total)
+    {
+        this.first = first;
+        this.last = last;
+        this.total = total;
+    }
+
+    /**
+     * Parse the value of a Range header
+     *
+     * @param header
+     *            The Range header value, for instance "bytes=0-499", "bytes=500-" or "bytes=-500"
+     * @param total
+     *            The total length of the content in bytes
+     * @return The range, or null when it can't be satisfied
+     * @throws IllegalArgumentException
+     *             When the header is not a single byte range
+     */
+    public static ByteRange parse(final String header, final long total) throws IllegalArgumentException
+    {
+        String value = header.trim();
+        if (!value.startsWith(BYTES_UNIT + "="))
+            throw new IllegalArgumentException("Unsupported range unit: " + header);
+
+        String spec = value.substring(BYTES_UNIT.length() + 1).trim();
+        if (spec.contains(","))
+            throw new IllegalArgumentException("Multiple ranges are not supported: " + header);
+
+        int dashPos = spec.indexOf('-');
+        if (dashPos < 0)
+            throw new IllegalArgumentException("Invalid range: " + header);
+
+        String firstStr = spec.substring(0, dashPos).trim();
+        String lastStr = spec.substring(dashPos + 1).trim();
+        long first;
+        long last;
+        try
+        {
+            if (firstStr.isEmpty())
+            {
+                // suffix range, the final bytes
+                long suffixLength = Long.parseLong(lastStr);
+                if (suffixLength <= 0)
+                    return null;
+                first = Math.max(0, total - suffixLength);
+                last = total - 1;
+            }
+            else
+            {
+                first = Long.parseLong(firstStr);
+                if (lastStr.isEmpty())
+                {
+                    last = total - 1;
+                }
+                else
+                {
+                    last = Long.parseLong(lastStr);
+                    if (last < first)
+                        throw new IllegalArgumentException("Invalid range: " + header);
+                    last = Math.min(last, total - 1);
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid range: " + header);
+        }
+
+        if (first >= total || last < first)
+            return null; // not satisfiable
+
+        return new ByteRange(first, last, total);
+    }
+
+    public long getFirst()
+    {
+        return first;
+    }
+
+    public long getLast()
+    {
+        return last;
+    }
+
+    public long getTotal()
+    {
+        return total;
+    }
+
+    public long getLength()
+    {
+        return last - first + 1;
+    }
+
+    /**
+     * @return The value for the Content-Range header of a 206 response
+     */
+    public String toContentRange()
+    {
+        return BYTES_UNIT + " " + first + "-" + last + "/" + total;
+    }
+
+    /**
+     * @return The value for the Range header when requesting this range
+     */
+    public String toRangeHeader()
+    {
+        return BYTES_UNIT + "=" + first + "-" + last;
+    }
+
+    /**
+     * @param total
+     * @return The value for the Content-Range header of a 416 response
+     */
+    public static String toUnsatisfiedContentRange(final long total)
+    {
+        return BYTES_UNIT + " */" + total;
+    }
+}
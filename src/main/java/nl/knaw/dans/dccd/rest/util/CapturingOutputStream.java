@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes to the given stream and keeps a copy of what is written, 
+ * until it becomes larger than the maximum.
+ *
+ * @author paulboon
+ */
+public class CapturingOutputStream extends FilterOutputStream
+{
+    private final int maxBytes;
+    private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+    public CapturingOutputStream(final OutputStream out, final int maxBytes)
+    {
+        super(out);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        out.write(b);
+        capture(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        out.write(b, off, len);
+        capture(b, off, len);
+    }
+
+    private void capture(final byte[] b, final int off, final int len)
+    {
+        if (captured == null)
+            return;
+        if (captured.size() + len > maxBytes)
+        {
+            captured = null; // too large, stop capturing
+            return;
+        }
+        captured.write(b, off, len);
+    }
+
+    /**
+     * @return The bytes written, or null when it was too large
+     */
+    public byte[] getCaptured()
+    {
+        return captured == null ? null : captured.toByteArray();
+    }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+/**
+ * Compresses the XML, JSON and text responses with gzip or deflate, 
+ * when the client accepts it (Accept-Encoding).
+ *
+ * The response is compressed while it is written, it is never buffered completely. 
+ * Responses with a known length below the minimum size are not compressed, 
+ * and neither are other media types (like PDF, JPEG or ZIP associated files) 
+ * or partial content, because the ranges are about the uncompressed bytes.
+ * 
+ * The compressed response is a different representation, so its ETag is made weak; 
+ * a strong ETag is for byte for byte identical content, which is needed for If-Range.
+ * A weak ETag still matches with If-None-Match, so compressed responses can be revalidated.
+ *
+ * @author paulboon
+ */
+public class CompressionFilter implements ContainerResponseFilter
+{
+    public static final long MIN_BYTES = Long.getLong("dccd.rest.compression.minBytes", 1024L);
+
+    public static final String GZIP = "gzip";
+    public static final String X_GZIP = "x-gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String WEAK_PREFIX = "W/";
+    private static final int STATUS_PARTIAL_CONTENT = 206;
+    private static final int STATUS_NOT_MODIFIED = 304;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    public ContainerResponse filter(final ContainerRequest request, final ContainerResponse response)
+    {
+        MultivaluedMap<String, Object> headers = response.getHttpHeaders();
+        if (response.getStatus() == STATUS_NOT_MODIFIED)
+        {
+            keepWeakETag(request, headers);
+            return response;
+        }
+        if (response.getEntity() == null || !isCompressible(getMediaType(headers)))
+            return response;
+
+        addVary(headers);
+
+        if (response.getStatus() == STATUS_PARTIAL_CONTENT || headers.containsKey(CONTENT_RANGE_HEADER)
+                || headers.containsKey(CONTENT_ENCODING_HEADER))
+            return response;
+
+        String encoding = selectEncoding(request.getHeaderValue(ACCEPT_ENCODING_HEADER));
+        if (encoding != null)
+        {
+            response.setContainerResponseWriter(new CompressingWriter(response.getContainerResponseWriter(), encoding));
+        }
+        return response;
+    }
+
+    private static MediaType getMediaType(final MultivaluedMap<String, Object> headers)
+    {
+        Object contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType == null || contentType instanceof MediaType)
+            return (MediaType) contentType;
+        try
+        {
+            return MediaType.valueOf(contentType.toString());
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param mediaType
+     * @return true for XML, JSON (Lines) and text
+     */
+    static boolean isCompressible(final MediaType mediaType)
+    {
+        if (mediaType == null)
+            return false;
+        String type = mediaType.getType();
+        String subtype = mediaType.getSubtype();
+        return "text".equalsIgnoreCase(type) 
+                || "xml".equalsIgnoreCase(subtype) || subtype.toLowerCase().endsWith("+xml")
+                || "json".equalsIgnoreCase(subtype) || subtype.toLowerCase().endsWith("+json")
+                || "x-ndjson".equalsIgnoreCase(subtype);
+    }
+
+    /**
+     * Choose the encoding, gzip is preferred over deflate. 
+     * A coding that is refused explicitly (q=0) is not used, also when '*' is accepted.
+     *
+     * @param acceptEncoding
+     *            The value of the Accept-Encoding header
+     * @return The encoding, or null when the response must not be compressed
+     */
+    static String selectEncoding(final String acceptEncoding)
+    {
+        if (acceptEncoding == null)
+            return null;
+
+        // null when not mentioned
+        Boolean gzip = null;
+        Boolean deflate = null;
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(","))
+        {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim().toLowerCase();
+            boolean accepted = !isRefused(parts);
+            if (GZIP.equals(name) || X_GZIP.equals(name))
+                gzip = accepted && !Boolean.FALSE.equals(gzip);
+            else if (DEFLATE.equals(name))
+                deflate = accepted;
+            else if ("*".equals(name))
+                any = accepted;
+        }
+        if (gzip == null)
+            gzip = any;
+        if (deflate == null)
+            deflate = any;
+
+        if (Boolean.TRUE.equals(gzip))
+            return GZIP;
+        if (Boolean.TRUE.equals(deflate))
+            return DEFLATE;
+        return null;
+    }
+
+    /**
+     * @param parts
+     *            The content coding and its parameters
+     * @return true if the quality value is zero
+     */
+    private static boolean isRefused(final String[] parts)
+    {
+        for (int i = 1; i < parts.length; i++)
+        {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q="))
+            {
+                try
+                {
+                    return Double.parseDouble(parameter.substring(2).trim()) <= 0;
+                }
+                catch (NumberFormatException e)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param etag
+     *            The value of the ETag header
+     * @return The weak version of the ETag
+     */
+    static Object toWeak(final Object etag)
+    {
+        if (etag instanceof EntityTag)
+            return new EntityTag(((EntityTag) etag).getValue(), true);
+        String value = etag.toString();
+        return value.startsWith(WEAK_PREFIX) ? value : WEAK_PREFIX + value;
+    }
+
+    /**
+     * When the client revalidates the compressed response (with the weak ETag), 
+     * the Not Modified response keeps that ETag
+     */
+    private static void keepWeakETag(final ContainerRequest request, final MultivaluedMap<String, Object> headers)
+    {
+        Object etag = headers.getFirst(HttpHeaders.ETAG);
+        String ifNoneMatch = request.getHeaderValue(IF_NONE_MATCH_HEADER);
+        if (etag == null || ifNoneMatch == null)
+            return;
+        Object weakETag = toWeak(etag);
+        if (ifNoneMatch.contains(weakETag.toString()))
+            headers.putSingle(HttpHeaders.ETAG, weakETag);
+    }
+
+    /**
+     * The response depends on the Accept-Encoding, also when it is not compressed
+     */
+    private static void addVary(final MultivaluedMap<String, Object> headers)
+    {
+        Object vary = headers.getFirst(HttpHeaders.VARY);
+        if (vary == null)
+            headers.putSingle(HttpHeaders.VARY, ACCEPT_ENCODING_HEADER);
+        else if (!vary.toString().contains(ACCEPT_ENCODING_HEADER))
+            headers.putSingle(HttpHeaders.VARY, vary + ", " + ACCEPT_ENCODING_HEADER);
+    }
+
+    /**
+     * Decides when the length is known and compresses the entity while it is written
+     */
+    private static class CompressingWriter implements ContainerResponseWriter
+    {
+        private final ContainerResponseWriter writer;
+        private final String encoding;
+        private DeflaterOutputStream compressingStream = null;
+
+        CompressingWriter(final ContainerResponseWriter writer, final String encoding)
+        {
+            this.writer = writer;
+            this.encoding = encoding;
+        }
+
+        public OutputStream writeStatusAndHeaders(final long contentLength, final ContainerResponse response)
+                throws IOException
+        {
+            if (contentLength >= 0 && contentLength < MIN_BYTES)
+                return writer.writeStatusAndHeaders(contentLength, response);
+
+            // the length of the compressed response is not known in advance
+            MultivaluedMap<String, Object> headers = response.getHttpHeaders();
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.putSingle(CONTENT_ENCODING_HEADER, encoding);
+            Object etag = headers.getFirst(HttpHeaders.ETAG);
+            if (etag != null)
+                headers.putSingle(HttpHeaders.ETAG, toWeak(etag));
+            OutputStream output = writer.writeStatusAndHeaders(-1, response);
+            if (GZIP.equals(encoding))
+                compressingStream = new GZIPOutputStream(output, BUFFER_SIZE);
+            else
+                compressingStream = new DeflaterOutputStream(output);
+            return compressingStream;
+        }
+
+        public void finish() throws IOException
+        {
+            if (compressingStream != null)
+                compressingStream.finish();
+            writer.finish();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded, immutable part of a document that can be written again and again.
+ *
+ * The XML markup is produced once when recording, 
+ * so the XmlDocumentWriter only has to copy it; 
+ * other writers get the recorded elements replayed.
+ *
+ * @author paulboon
+ */
+public class DocumentFragment
+{
+    private static final byte START_ELEMENT = 0;
+    private static final byte ATTRIBUTE = 1;
+    private static final byte CHARACTERS = 2;
+    private static final byte END_ELEMENT = 3;
+
+    // rough estimates for the memory used, in bytes
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    private final byte[] ops;
+    private final String[] args;
+    private final String xml;
+
+    private DocumentFragment(final byte[] ops, final String[] args)
+    {
+        this.ops = ops;
+        this.args = args;
+
+        StringWriter sw = new StringWriter();
+        XmlDocumentWriter xmlWriter = new XmlDocumentWriter(sw);
+        replay(xmlWriter);
+        xmlWriter.endDocument();
+        this.xml = sw.toString();
+    }
+
+    /**
+     * Record what the renderer writes
+     *
+     * @param renderer
+     *            Constructs the part of the document, it must close all elements it starts
+     * @return The fragment
+     */
+    public static DocumentFragment record(final DocumentRenderer renderer)
+    {
+        Recorder recorder = new Recorder();
+        renderer.render(recorder);
+        return recorder.toFragment();
+    }
+
+    /**
+     * Write the recorded part of the document
+     *
+     * @param writer
+     */
+    public void replay(final DocumentWriter writer)
+    {
+        int argIndex = 0;
+        for (int i = 0; i < ops.length; i++)
+        {
+            switch (ops[i])
+            {
+            case START_ELEMENT:
+                writer.startElement(args[argIndex++]);
+                break;
+            case ATTRIBUTE:
+                writer.attribute(args[argIndex++], args[argIndex++]);
+                break;
+            case CHARACTERS:
+                writer.characters(args[argIndex++]);
+                break;
+            case END_ELEMENT:
+                writer.endElement();
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + ops[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The (escaped) XML markup, without the XML instruction
+     */
+    public String getXml()
+    {
+        return xml;
+    }
+
+    /**
+     * @return Estimate of the memory used in bytes
+     */
+    public long getWeight()
+    {
+        long weight = 3 * OBJECT_OVERHEAD + ops.length + STRING_OVERHEAD + 2L * xml.length();
+        for (String arg : args)
+        {
+            if (arg != null)
+                weight += STRING_OVERHEAD + 2L * arg.length();
+        }
+        return weight;
+    }
+
+    /**
+     * Records the calls, but does not write anything
+     */
+    private static class Recorder extends AbstractDocumentWriter
+    {
+        private final List<Byte> ops = new ArrayList<Byte>();
+        private final List<String> args = new ArrayList<String>();
+
+        public void startDocument()
+        {
+            // not part of a fragment
+        }
+
+        public void endDocument()
+        {
+            // not part of a fragment
+        }
+
+        public void startElement(final String name)
+        {
+            ops.add(START_ELEMENT);
+            args.add(name);
+        }
+
+        public void attribute(final String name, final String value)
+        {
+            ops.add(ATTRIBUTE);
+            args.add(name);
+            args.add(value);
+        }
+
+        public void characters(final String text)
+        {
+            ops.add(CHARACTERS);
+            args.add(text);
+        }
+
+        public void endElement()
+        {
+            ops.add(END_ELEMENT);
+        }
+
+        DocumentFragment toFragment()
+        {
+            byte[] opsArray = new byte[ops.size()];
+            for (int i = 0; i < opsArray.length; i++)
+                opsArray[i] = ops.get(i);
+            return new DocumentFragment(opsArray, args.toArray(new String[args.size()]));
+        }
+    }
+}
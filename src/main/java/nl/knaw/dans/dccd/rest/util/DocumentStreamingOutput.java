@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Renders a document directly to the response, as XML or as JSON.
+ *
+ * @author paulboon
+ */
+public class DocumentStreamingOutput implements StreamingOutput
+{
+    private final DocumentRenderer renderer;
+    private final boolean json;
+
+    /**
+     * @param renderer
+     *            Constructs the document
+     * @param json
+     *            True for JSON and false for XML
+     */
+    public DocumentStreamingOutput(final DocumentRenderer renderer, final boolean json)
+    {
+        this.renderer = renderer;
+        this.json = json;
+    }
+
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+        DocumentWriter writer = json ? new JsonDocumentWriter(output) : new XmlDocumentWriter(output);
+        try
+        {
+            writer.startDocument();
+            renderer.render(writer);
+            writer.endDocument();
+        }
+        catch (DocumentWriterException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            e.printStackTrace();
+            throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
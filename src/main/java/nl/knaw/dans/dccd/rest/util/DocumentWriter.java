@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+/**
+ * Writes a (response) document without knowing the output format.
+ *
+ * The document is described as XML elements and attributes,
+ * and it is up to the implementation to produce XML or JSON from it.
+ * Implementations write directly to their output, nothing is buffered as a String.
+ *
+ * Failures are reported with the unchecked DocumentWriterException,
+ * so the code that constructs the document does not need to handle them.
+ *
+ * @author paulboon
+ */
+public interface DocumentWriter
+{
+    void startDocument();
+
+    /**
+     * Closes any open elements and flushes the output
+     */
+    void endDocument();
+
+    void startElement(String name);
+
+    /**
+     * Must be called directly after startElement
+     *
+     * @param name
+     * @param value
+     */
+    void attribute(String name, String value);
+
+    /**
+     * @param text
+     *            unescaped text, null is written as an empty string
+     */
+    void characters(String text);
+
+    void endElement();
+
+    /**
+     * An element with only text content
+     *
+     * @param name
+     * @param text
+     */
+    void element(String name, String text);
+
+    /**
+     * An element with only text content, but nothing is written when the text is empty
+     *
+     * @param name
+     * @param text
+     */
+    void elementOptional(String name, String text);
+
+    /**
+     * A previously recorded part of a document
+     *
+     * @param fragment
+     */
+    void fragment(DocumentFragment fragment);
+}
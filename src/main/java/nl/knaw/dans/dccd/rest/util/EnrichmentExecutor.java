@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the lookups for the information that is not in the search results (like the owner organisation)
+ * concurrently, so a page of results waits for the slowest lookup instead of all of them.
+ *
+ * The number of threads and waiting lookups is bounded, 
+ * when it is full the lookup is not done and the information is left out, 
+ * like for a lookup that takes too long.
+ *
+ * @author paulboon
+ */
+public class EnrichmentExecutor
+{
+    public static final int THREADS = Integer.getInteger("dccd.rest.enrichment.threads", 8);
+    public static final int QUEUE_SIZE = Integer.getInteger("dccd.rest.enrichment.queueSize", 256);
+    /** Maximum time to wait for a lookup, after that the information is left out */
+    public static final long TIMEOUT_MILLIS = Long.getLong("dccd.rest.enrichment.timeoutMillis", 2000L);
+
+    private static final EnrichmentExecutor INSTANCE = new EnrichmentExecutor();
+
+    private final ThreadPoolExecutor executor;
+
+    private EnrichmentExecutor()
+    {
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, 
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory()
+                {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "EnrichmentExecutor-" + count.incrementAndGet());
+                        // don't keep the webapp from stopping
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static EnrichmentExecutor getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Start the lookup
+     *
+     * @param lookup
+     * @return The result to come, but when there are too many lookups waiting it is cancelled
+     */
+    public <T> Future<T> submit(final Callable<T> lookup)
+    {
+        try
+        {
+            return executor.submit(lookup);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // doing it in the calling thread would have no deadline
+            FutureTask<T> task = new FutureTask<T>(lookup);
+            task.cancel(false);
+            return task;
+        }
+    }
+
+    /**
+     * Wait for the result of a lookup, until the deadline.
+     * A lookup that takes too long is not cancelled, 
+     * so the caches it fills can be used by the next request.
+     *
+     * @param future
+     * @param deadline
+     *            Time in milliseconds, like System.currentTimeMillis()
+     * @return The result
+     * @throws TimeoutException
+     *             When it is not done before the deadline, or was never started
+     * @throws ExecutionException
+     *             When the lookup failed
+     */
+    public static <T> T getResult(final Future<T> future, final long deadline) throws TimeoutException,
+            ExecutionException
+    {
+        try
+        {
+            return future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted");
+        }
+        catch (CancellationException e)
+        {
+            throw new TimeoutException("Too many lookups waiting");
+        }
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+}
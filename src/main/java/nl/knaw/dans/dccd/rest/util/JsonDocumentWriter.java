@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import de.odysseus.staxon.json.JsonXMLConfig;
+import de.odysseus.staxon.json.JsonXMLConfigBuilder;
+import de.odysseus.staxon.json.JsonXMLOutputFactory;
+
+/**
+ * Writes the document as JSON, using the staxon mapping of XML to JSON.
+ *
+ * Repeated elements become arrays ('autoArray'), 
+ * so the JSON has the same shape as when converting the XML afterwards.
+ *
+ * @author paulboon
+ */
+public class JsonDocumentWriter extends AbstractDocumentWriter
+{
+    private static final JsonXMLConfig CONFIG = new JsonXMLConfigBuilder().autoArray(true).prettyPrint(true).build();
+    private static final JsonXMLConfig COMPACT_CONFIG = new JsonXMLConfigBuilder().autoArray(true).prettyPrint(false).build();
+    // the factories are thread safe once configured
+    private static final XMLOutputFactory FACTORY = new JsonXMLOutputFactory(CONFIG);
+    private static final XMLOutputFactory COMPACT_FACTORY = new JsonXMLOutputFactory(COMPACT_CONFIG);
+
+    private final XMLStreamWriter writer;
+    private int depth = 0;
+
+    public JsonDocumentWriter(final OutputStream output)
+    {
+        this(output, true);
+    }
+
+    /**
+     * @param output
+     * @param prettyPrint
+     *            false to write the document on a single line, as needed for JSON Lines
+     */
+    public JsonDocumentWriter(final OutputStream output, final boolean prettyPrint)
+    {
+        try
+        {
+            writer = (prettyPrint ? FACTORY : COMPACT_FACTORY).createXMLStreamWriter(output);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void startDocument()
+    {
+        try
+        {
+            writer.writeStartDocument();
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void endDocument()
+    {
+        try
+        {
+            while (depth > 0)
+                endElement();
+            writer.writeEndDocument();
+            // Note that closing would also close the response stream
+            writer.flush();
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void startElement(final String name)
+    {
+        try
+        {
+            writer.writeStartElement(name);
+            depth++;
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void attribute(final String name, final String value)
+    {
+        try
+        {
+            writer.writeAttribute(name, value == null ? "" : value);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void characters(final String text)
+    {
+        try
+        {
+            // an empty element has no text, like when the XML would be parsed
+            if (text != null && !text.isEmpty())
+                writer.writeCharacters(text);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void endElement()
+    {
+        try
+        {
+            writer.writeEndElement();
+            depth--;
+        }
+        catch (XMLStreamException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes a file from the store (an URL, normally a Fedora datastream)
+ * through to the response without holding it in memory.
+ *
+ * The content is copied with a pooled buffer while the client reads it,
+ * and the length and type are passed on when the store provides them.
+ *
+ * @author paulboon
+ */
+public class StreamingDownload implements StreamingOutput
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingDownload.class);
+
+    /**
+     * Status codes and headers that JAX-RS has no constants for
+     */
+    public static final int PARTIAL_CONTENT = 206;
+    public static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String ETAG = "ETag";
+
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private final URL url;
+    private final long contentLength;
+    private final String contentType;
+    private final long lastModified;
+    private final String etag;
+
+    /**
+     * The connection for the content, null when only the headers were retrieved
+     */
+    private URLConnection connection;
+
+    protected StreamingDownload(final URL url, final URLConnection connection, final long contentLength,
+            final String contentType, final long lastModified, final String etag)
+    {
+        this.url = url;
+        this.connection = connection;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    /**
+     * Connect to the URL, but don't read the content yet
+     *
+     * @param url
+     *            The URL that points to a file.
+     * @return The download
+     * @throws IOException
+     *             If the file can't be retrieved
+     */
+    public static StreamingDownload open(final URL url) throws IOException
+    {
+        URLConnection connection = connect(url, "GET", null);
+        return fromHeaders(url, connection, connection);
+    }
+
+    /**
+     * Only get the information about the file, not the content;
+     * the connection is closed as soon as the headers are read
+     *
+     * @param url
+     *            The URL that points to a file.
+     * @return The download, which should only be written for a new request to the store
+     * @throws IOException
+     *             If the file can't be retrieved
+     */
+    public static StreamingDownload openHead(final URL url) throws IOException
+    {
+        URLConnection headConnection = connect(url, "HEAD", null);
+        try
+        {
+            return fromHeaders(url, headConnection, null);
+        }
+        finally
+        {
+            disconnect(headConnection);
+        }
+    }
+
+    /**
+     * Connect for a request that might have a Range header.
+     * For a range only the headers are retrieved here,
+     * the store is asked for the range (or the complete file) when the response is written,
+     * so it does not start a complete transfer that is thrown away.
+     *
+     * @param url
+     *            The URL that points to a file.
+     * @param rangeHeader
+     *            The Range header of the request, or null
+     * @return The download
+     * @throws IOException
+     *             If the file can't be retrieved
+     */
+    public static StreamingDownload open(final URL url, final String rangeHeader) throws IOException
+    {
+        if (rangeHeader == null)
+            return open(url);
+        else
+            return openHead(url);
+    }
+
+    private static StreamingDownload fromHeaders(final URL url, final URLConnection headers,
+            final URLConnection content)
+    {
+        // Note that getContentLength() only handles int sizes
+        long length = -1;
+        String value = headers.getHeaderField("Content-Length");
+        if (value != null)
+        {
+            try
+            {
+                length = Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException e)
+            {
+                // unknown
+            }
+        }
+        return new StreamingDownload(url, content, length, headers.getContentType(), headers.getLastModified(),
+                headers.getHeaderField(ETAG));
+    }
+
+    private static URLConnection connect(final URL url, final String method, final ByteRange range)
+            throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        if (connection instanceof HttpURLConnection)
+        {
+            ((HttpURLConnection) connection).setRequestMethod(method);
+            if (range != null)
+                connection.setRequestProperty("Range", range.toRangeHeader());
+        }
+        connection.connect();
+        if (connection instanceof HttpURLConnection)
+        {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            int code = httpConnection.getResponseCode();
+            if (code >= 400)
+            {
+                httpConnection.disconnect();
+                throw new IOException("Failed to retrieve " + url + ", status: " + code);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @return The connection for the content, a new one when only the headers were retrieved
+     * @throws IOException
+     */
+    protected URLConnection getConnection() throws IOException
+    {
+        if (connection == null)
+            connection = connect(url, "GET", null);
+        return connection;
+    }
+
+    /**
+     * @return The length in bytes, or -1 when unknown
+     */
+    public long getContentLength()
+    {
+        return contentLength;
+    }
+
+    /**
+     * @return The media type given by the store, or octet-stream when unknown
+     */
+    public String getContentType()
+    {
+        String type = contentType;
+        if (type == null || type.trim().isEmpty() || "content/unknown".equals(type))
+            return MediaType.APPLICATION_OCTET_STREAM;
+        else
+            return type;
+    }
+
+    /**
+     * @return The last modification time in milliseconds, or 0 when unknown
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return The entity tag given by the store, or null when unknown
+     */
+    public String getETag()
+    {
+        return etag;
+    }
+
+    /**
+     * Check the If-Range header; a range request is only honoured
+     * when the client still has the same version of the file
+     *
+     * @param ifRange
+     *            The If-Range header value, an entity tag or a HTTP date
+     * @return True if the range may be sent
+     */
+    public boolean isIfRangeSatisfied(final String ifRange)
+    {
+        if (ifRange == null || ifRange.trim().isEmpty())
+            return true;
+
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/"))
+        {
+            // only strong entity tags can be used
+            String etag = getETag();
+            return etag != null && !value.startsWith("W/") && etag.equals(value);
+        }
+        else
+        {
+            long lastModified = getLastModified();
+            if (lastModified <= 0)
+                return false;
+            try
+            {
+                SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                Date date = format.parse(value);
+                // HTTP dates have a resolution of seconds
+                return date.getTime() / 1000 == lastModified / 1000;
+            }
+            catch (ParseException e)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Construct the (200 OK) response that streams the file
+     *
+     * @return The response builder, with type and length when known
+     */
+    public ResponseBuilder responseBuilder()
+    {
+        return headResponseBuilder().entity(this);
+    }
+
+    /**
+     * Construct the response for a HEAD request, the headers without the content
+     *
+     * @return The response builder, with type and length when known
+     */
+    public ResponseBuilder headResponseBuilder()
+    {
+        ResponseBuilder builder = Response.status(Status.OK).type(getContentType());
+        long length = getContentLength();
+        if (length >= 0)
+        {
+            builder.header(HttpHeaders.CONTENT_LENGTH, length);
+            builder.header(ACCEPT_RANGES, ByteRange.BYTES_UNIT);
+        }
+        appendValidators(builder);
+        return builder;
+    }
+
+    /**
+     * Construct the (206 Partial Content) response that streams only the given range
+     *
+     * @param range
+     * @return The response builder
+     */
+    public ResponseBuilder partialResponseBuilder(final ByteRange range)
+    {
+        ResponseBuilder builder = Response.status(PARTIAL_CONTENT).type(getContentType())
+                .header(HttpHeaders.CONTENT_LENGTH, range.getLength())
+                .header(CONTENT_RANGE, range.toContentRange())
+                .header(ACCEPT_RANGES, ByteRange.BYTES_UNIT)
+                .entity(new StreamingOutput()
+                {
+                    @Override
+                    public void write(OutputStream output) throws IOException, WebApplicationException
+                    {
+                        writeRange(output, range);
+                    }
+                });
+        appendValidators(builder);
+        return builder;
+    }
+
+    /**
+     * Construct the response for a range that lies outside the file
+     *
+     * @return The response builder
+     */
+    public ResponseBuilder unsatisfiableRangeResponseBuilder()
+    {
+        long length = getContentLength();
+        close();
+        return Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(CONTENT_RANGE, ByteRange.toUnsatisfiedContentRange(length));
+    }
+
+    /**
+     * Construct the response for the (optional) Range and If-Range headers of a request
+     *
+     * @param rangeHeader
+     * @param ifRangeHeader
+     * @return The response builder for the complete file or for the requested range
+     */
+    public ResponseBuilder responseBuilder(final String rangeHeader, final String ifRangeHeader)
+    {
+        long length = getContentLength();
+        if (rangeHeader == null || length < 0 || !isIfRangeSatisfied(ifRangeHeader))
+            return responseBuilder();
+
+        ByteRange range;
+        try
+        {
+            range = ByteRange.parse(rangeHeader, length);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // multiple or invalid ranges, just send all of it
+            LOGGER.debug(e.getMessage());
+            return responseBuilder();
+        }
+        if (range == null)
+            return unsatisfiableRangeResponseBuilder();
+        else
+            return partialResponseBuilder(range);
+    }
+
+    private void appendValidators(final ResponseBuilder builder)
+    {
+        long lastModified = getLastModified();
+        if (lastModified > 0)
+            builder.lastModified(new Date(lastModified));
+        String etag = getETag();
+        if (etag != null)
+            builder.header(ETAG, etag);
+    }
+
+    /**
+     * Close the connection, when the content is not going to be read
+     */
+    public void close()
+    {
+        if (connection == null)
+            return;
+        try
+        {
+            connection.getInputStream().close();
+        }
+        catch (IOException e)
+        {
+            // closing anyway
+        }
+        disconnect(connection);
+        connection = null;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+        URLConnection content = getConnection();
+        InputStream input = content.getInputStream();
+        try
+        {
+            copy(input, output, -1);
+        }
+        finally
+        {
+            input.close();
+            disconnect(content);
+            connection = null;
+        }
+    }
+
+    /**
+     * Write only the bytes of the range;
+     * the store is asked for just that range and when it does not support that,
+     * the bytes before the range are skipped.
+     *
+     * @param output
+     * @param range
+     * @throws IOException
+     */
+    protected void writeRange(final OutputStream output, final ByteRange range) throws IOException
+    {
+        URLConnection content = connection;
+        if (content == null)
+        {
+            try
+            {
+                content = connect(url, "GET", range);
+            }
+            catch (IOException e)
+            {
+                // the store did not like the range, ask for all of it
+                content = connect(url, "GET", null);
+            }
+        }
+        connection = null;
+
+        boolean partial = content instanceof HttpURLConnection
+                && ((HttpURLConnection) content).getResponseCode() == PARTIAL_CONTENT;
+        InputStream input = content.getInputStream();
+        try
+        {
+            if (!partial)
+                skipFully(input, range.getFirst());
+            copy(input, output, range.getLength());
+        }
+        finally
+        {
+            input.close();
+            disconnect(content);
+        }
+    }
+
+    private static void skipFully(final InputStream input, final long n) throws IOException
+    {
+        long remaining = n;
+        while (remaining > 0)
+        {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0)
+            {
+                // skip might not be able to tell us it is at the end
+                if (input.read() == -1)
+                    throw new IOException("Unexpected end of stream while skipping");
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Copy bytes from input to output using a pooled buffer
+     * and stop when the client is no longer reading.
+     *
+     * @param input
+     * @param output
+     * @param maxBytes
+     *            Maximum number of bytes to copy, or -1 for all
+     * @return The number of bytes copied
+     * @throws IOException
+     *             If reading from the input fails
+     */
+    protected long copy(final InputStream input, final OutputStream output, final long maxBytes)
+            throws IOException
+    {
+        BufferPool pool = BufferPool.getShared();
+        byte[] buffer = pool.borrow();
+        long total = 0;
+        try
+        {
+            while (maxBytes < 0 || total < maxBytes)
+            {
+                int toRead = buffer.length;
+                if (maxBytes >= 0 && maxBytes - total < toRead)
+                    toRead = (int) (maxBytes - total);
+
+                int bytesRead = input.read(buffer, 0, toRead);
+                if (bytesRead == -1)
+                    break;
+
+                try
+                {
+                    output.write(buffer, 0, bytesRead);
+                }
+                catch (IOException e)
+                {
+                    // the client has gone away, no reason to read any further
+                    LOGGER.debug("Client stopped reading after " + total + " bytes: " + e.getMessage());
+                    return total;
+                }
+                total += bytesRead;
+            }
+        }
+        finally
+        {
+            pool.release(buffer);
+        }
+        return total;
+    }
+
+    private static void disconnect(final URLConnection connection)
+    {
+        if (connection instanceof HttpURLConnection)
+            ((HttpURLConnection) connection).disconnect();
+    }
+}
@@ -15,7 +15,6 @@
  ******************************************************************************/
 package nl.knaw.dans.dccd.rest.util;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -66,7 +65,8 @@ public class UrlConverter
     /**
      * When you don't know the size
      * 
-     * Note that this code is copied from AbstractBinaryUnit.readUrl
+     * Note that this code was copied from AbstractBinaryUnit.readUrl, 
+     * for downloads use StreamingDownload instead of reading everything in memory
      * 
      * @param url
      *            The URL that points to a file.
@@ -80,14 +80,11 @@ public class UrlConverter
         try
         {
             inStream = url.openStream();
-            BufferedInputStream bis = new BufferedInputStream(inStream);
-
-            int result = bis.read();
-            while (result != -1)
+            byte[] buffer = new byte[BufferPool.DEFAULT_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inStream.read(buffer)) != -1)
             {
-                byte b = (byte) result;
-                buf.write(b);
-                result = bis.read();
+                buf.write(buffer, 0, bytesRead);
             }
         }
         finally
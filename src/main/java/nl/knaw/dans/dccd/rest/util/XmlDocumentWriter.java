@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Writes the document as (UTF-8 encoded) XML
+ *
+ * @author paulboon
+ */
+public class XmlDocumentWriter extends AbstractDocumentWriter
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Writer writer;
+    private final List<String> openElements = new ArrayList<String>();
+    private boolean startTagOpen = false;
+
+    public XmlDocumentWriter(final OutputStream output)
+    {
+        this(new BufferedWriter(new OutputStreamWriter(output, UTF8)));
+    }
+
+    public XmlDocumentWriter(final Writer writer)
+    {
+        this.writer = writer;
+    }
+
+    public void startDocument()
+    {
+        write(XmlStringUtil.XML_INSTRUCTION_STR);
+    }
+
+    public void endDocument()
+    {
+        while (!openElements.isEmpty())
+            endElement();
+        try
+        {
+            writer.flush();
+        }
+        catch (IOException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+
+    public void startElement(final String name)
+    {
+        closeStartTag();
+        // NOTE the name is not escaped
+        write("<");
+        write(name);
+        openElements.add(name);
+        startTagOpen = true;
+    }
+
+    public void attribute(final String name, final String value)
+    {
+        if (!startTagOpen)
+            throw new IllegalStateException("attribute " + name + " must directly follow the start of an element");
+        write(" ");
+        write(name);
+        write("=\"");
+        write(escape(value));
+        write("\"");
+    }
+
+    public void characters(final String text)
+    {
+        closeStartTag();
+        write(escape(text));
+    }
+
+    public void endElement()
+    {
+        closeStartTag();
+        String name = openElements.remove(openElements.size() - 1);
+        write("</");
+        write(name);
+        write(">");
+    }
+
+    /**
+     * The fragment already has its markup, so that is just copied
+     */
+    @Override
+    public void fragment(final DocumentFragment fragment)
+    {
+        closeStartTag();
+        write(fragment.getXml());
+    }
+
+    private void closeStartTag()
+    {
+        if (startTagOpen)
+        {
+            write(">");
+            startTagOpen = false;
+        }
+    }
+
+    private static String escape(final String text)
+    {
+        if (text == null)
+            return "";
+        return StringEscapeUtils.escapeXml(text);
+    }
+
+    private void write(final String str)
+    {
+        try
+        {
+            writer.write(str);
+        }
+        catch (IOException e)
+        {
+            throw new DocumentWriterException(e);
+        }
+    }
+}
@@ -15,22 +15,7 @@
  ******************************************************************************/
 package nl.knaw.dans.dccd.rest.util;
 
-import org.apache.commons.lang.StringEscapeUtils;
-
 public class XmlStringUtil {
 
 	public static final String XML_INSTRUCTION_STR = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
-	
-	public static String getXMLElementStringOptional(final String tagname, final String text)
-	{
-		if (text != null && !text.trim().isEmpty())
-			return getXMLElementString(tagname, text);
-		else
-			return "";
-	}
-
-	public static String getXMLElementString(final String tagname, final String text)
-	{
-		return "<"+tagname+">" + StringEscapeUtils.escapeXml(text) + "</"+tagname+">";
-	}
 }
@@ -18,6 +18,7 @@ package nl.knaw.dans.dccd.rest;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.powermock.api.easymock.PowerMock.createMock;
 import static org.powermock.api.easymock.PowerMock.mockStatic;
@@ -26,14 +27,20 @@ import static org.powermock.api.easymock.PowerMock.verify;
 import static org.easymock.EasyMock.isA;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.SecurityContext;
 
 import nl.knaw.dans.common.lang.service.exceptions.ServiceException;
 import nl.knaw.dans.dccd.application.services.DccdUserService;
 import nl.knaw.dans.dccd.authn.UsernamePasswordAuthentication;
 import nl.knaw.dans.dccd.model.DccdUser;
 import nl.knaw.dans.dccd.model.DccdUserImpl;
+import nl.knaw.dans.dccd.rest.auth.AuthenticationFilter;
+import nl.knaw.dans.dccd.rest.auth.DccdSecurityContext;
+import nl.knaw.dans.dccd.rest.cache.CredentialCache;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -42,6 +49,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.sun.jersey.core.util.Base64;
+import com.sun.jersey.spi.container.ContainerRequest;
 
 /** 
  * Authentication Unit testing with Mocking of the (user) service
@@ -66,6 +74,8 @@ public class AbstractResourceTest {
     	requestHeadersMock = createMock(HttpHeaders.class);
         resource = new TestResource();
         resource.setRequestHeaders(requestHeadersMock);
+        // the tests use the same credentials
+        CredentialCache.getInstance().clear();
     }
 
     @Test
@@ -134,7 +144,57 @@ public class AbstractResourceTest {
         assertNull(user);	
     }
     
-    private void setUpUserService(final DccdUser user)
+    @Test
+    public void authenticateTwiceChecksCredentialsOnce() throws Exception
+    {
+    	DccdUser user = new DccdUserImpl();
+        setUpUserService(user); // expects only one authentication by the service
+        
+        ArrayList<String> authHeader = new ArrayList<String>();
+        byte[] encoded = Base64.encode("name:passwd");
+                
+        authHeader.add("Basic " + new String(encoded, "US-ASCII")); // username:password
+        expect(requestHeadersMock.getRequestHeader(isA(String.class))).andStubReturn(authHeader);
+        replay(requestHeadersMock);
+        
+        DccdUser user2 = resource.authenticate();
+        DccdUser user3 = resource.authenticate();
+
+    	verify(DccdUserService.class);
+        assertEquals(user, user2);
+        assertEquals(user, user3);
+    }
+    
+    @Test
+    public void authenticateOncePerRequestWithFilter() throws Exception
+    {
+    	DccdUser user = new DccdUserImpl();
+    	DccdUserService serviceMock = setUpUserService(user);
+    	
+    	Map<String, Object> properties = new HashMap<String, Object>();
+    	ContainerRequest request = createMock(ContainerRequest.class);
+    	expect(request.getHeaderValue(HttpHeaders.AUTHORIZATION))
+    		.andStubReturn("Basic " + new String(Base64.encode("name:passwd"), "US-ASCII"));
+    	expect(request.isSecure()).andStubReturn(false);
+    	expect(request.getProperties()).andStubReturn(properties);
+    	request.setSecurityContext(isA(SecurityContext.class));
+    	expectLastCall().once();
+    	replay(request);
+    	
+    	new AuthenticationFilter().filter(request);
+    	resource.setSecurityContext((DccdSecurityContext) properties.get(DccdSecurityContext.PROPERTY_NAME));
+    	
+    	// the resource needs the user more than once
+    	assertEquals(user, resource.authenticate());
+    	assertEquals(user, resource.authenticate());
+    	assertFalse(resource.isRequestByAdmin());
+    	
+    	verify(request);
+    	// only one authentication by the user service
+    	verify(serviceMock);
+    }
+    
+    private DccdUserService setUpUserService(final DccdUser user)
     {
     	mockStatic(DccdUserService.class);	
     	
@@ -160,6 +220,7 @@ public class AbstractResourceTest {
     	expectLastCall().once();
     	
     	replay(serviceMock);
+    	return serviceMock;
     }
     
     // an implementation of the abstract class to test
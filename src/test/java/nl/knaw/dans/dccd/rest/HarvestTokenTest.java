@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import nl.knaw.dans.common.lang.search.SortOrder;
+import nl.knaw.dans.dccd.search.DccdProjectSB;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+/**
+ * Resumption tokens of the harvest
+ * 
+ * @author paulboon
+ *
+ */
+public class HarvestTokenTest {
+	private static final DateTime FROM = new DateTime(2015, 1, 1, 0, 0, 0, 0);
+	private static final DateTime UNTIL = new DateTime(2015, 6, 1, 12, 0, 0, 0);
+
+	@Test
+	public void startRoundTrip() {
+		HarvestToken token = HarvestToken.parse(HarvestToken.start(FROM, UNTIL).format());
+		assertEquals(FROM.getMillis(), token.getFrom().getMillis());
+		assertEquals(UNTIL.getMillis(), token.getUntil().getMillis());
+		assertTrue(token.getCursor().isStart());
+	}
+
+	@Test
+	public void fromTheBeginning() {
+		HarvestToken token = HarvestToken.parse(HarvestToken.start(null, UNTIL).format());
+		assertNull(token.getFrom());
+		assertEquals(UNTIL.getMillis(), token.getUntil().getMillis());
+	}
+
+	@Test
+	public void nextPageRoundTrip() {
+		ListCursor next = ListCursor.parse(cursorToken(SortOrder.ASC), 
+				DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE, SortOrder.ASC);
+		String formatted = HarvestToken.start(FROM, UNTIL).next(next).format();
+
+		HarvestToken token = HarvestToken.parse(formatted);
+		assertEquals(next.format(), token.getCursor().format());
+		assertEquals(formatted, token.format());
+		// URL safe
+		assertTrue(formatted.matches("[A-Za-z0-9_-]+"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notBase64() {
+		HarvestToken.parse("!!!");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingField() {
+		HarvestToken.parse(ListCursor.encode(FROM.getMillis() + "\n" + UNTIL.getMillis()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tamperedTime() {
+		HarvestToken.parse(ListCursor.encode("yesterday\n" + UNTIL.getMillis() + "\n" + ListCursor.START));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void cursorOfAnotherList() {
+		// the harvest is oldest first
+		HarvestToken.parse(ListCursor.encode("\n" + UNTIL.getMillis() + "\n" + cursorToken(SortOrder.DESC)));
+	}
+
+	private static String cursorToken(final SortOrder order) {
+		return ListCursor.encode(DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE + "\n" + order + "\n" 
+				+ FROM.plusDays(1).getMillis() + "\n1\n25");
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import nl.knaw.dans.common.lang.search.SearchResult;
+import nl.knaw.dans.common.lang.search.SortOrder;
+import nl.knaw.dans.dccd.search.DccdProjectSB;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+import org.junit.Test;
+
+/**
+ * Cursor tokens and the pages of results with a cursor
+ * 
+ * @author paulboon
+ *
+ */
+public class ListCursorTest {
+
+	@Test
+	public void startIsStart() {
+		ListCursor cursor = ListCursor.parse(ListCursor.START, DccdProjectSB.PID_NAME);
+		assertTrue(cursor.isStart());
+		assertEquals(ListCursor.START, cursor.format());
+	}
+
+	@Test
+	public void nextCursorRoundTrip() {
+		ListCursor.Page page = ListCursor.parse(ListCursor.START, DccdProjectSB.PID_NAME)
+				.getPage(result(5, "dccd:1", "dccd:2"), 2);
+		String token = page.getNext().format();
+
+		ListCursor cursor = ListCursor.parse(token, DccdProjectSB.PID_NAME);
+		assertEquals(token, cursor.format());
+		// URL safe
+		assertTrue(token.matches("[A-Za-z0-9_-]+"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void cursorOfOtherSorting() {
+		String token = ListCursor.parse(ListCursor.START, DccdProjectSB.PID_NAME)
+				.getPage(result(5, "dccd:1", "dccd:2"), 2).getNext().format();
+		ListCursor.parse(token, DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void cursorOfOtherOrder() {
+		String token = ListCursor.parse(ListCursor.START, DccdProjectSB.PID_NAME)
+				.getPage(result(5, "dccd:1", "dccd:2"), 2).getNext().format();
+		ListCursor.parse(token, DccdProjectSB.PID_NAME, SortOrder.DESC);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedSorting() {
+		ListCursor.parse(ListCursor.START, DccdSB.OWNER_ID_NAME);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notBase64() {
+		ListCursor.parse("not a cursor!", DccdProjectSB.PID_NAME);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tamperedSkip() {
+		ListCursor.parse(ListCursor.encode(DccdProjectSB.PID_NAME + "\nASC\ndccd:1\n-1\n5"), DccdProjectSB.PID_NAME);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void skipAboveBound() {
+		ListCursor.parse(ListCursor.encode(DccdProjectSB.PID_NAME + "\nASC\ndccd:1\n" + (ListCursor.MAX_SKIP + 1) + "\n5"), 
+				DccdProjectSB.PID_NAME);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void skipOverflow() {
+		ListCursor.parse(ListCursor.encode(DccdProjectSB.PID_NAME + "\nASC\ndccd:1\n" + Integer.MAX_VALUE + "\n5"), 
+				DccdProjectSB.PID_NAME);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tamperedLastChange() {
+		ListCursor.parse(ListCursor.encode(DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE + "\nDESC\nyesterday\n0\n5"), 
+				DccdProjectSB.ADMINISTRATIVE_STATE_LASTCHANGE);
+	}
+
+	@Test
+	public void pagesWithTiesAndTotal() {
+		ListCursor first = ListCursor.parse(ListCursor.START, DccdProjectSB.PID_NAME);
+		ListCursor.Page page = first.getPage(result(5, "dccd:1", "dccd:2", "dccd:2"), 2);
+		assertPids(page, "dccd:1", "dccd:2");
+		assertEquals(5, page.getTotal());
+
+		// the next search starts at dccd:2 (inclusive) and has one dccd:2 that was already returned
+		ListCursor second = ListCursor.parse(page.getNext().format(), DccdProjectSB.PID_NAME);
+		page = second.getPage(result(4, "dccd:2", "dccd:2", "dccd:3", "dccd:4"), 2);
+		assertPids(page, "dccd:2", "dccd:3");
+		// the total of the list, not what remains after the cursor
+		assertEquals(5, page.getTotal());
+
+		ListCursor third = ListCursor.parse(page.getNext().format(), DccdProjectSB.PID_NAME);
+		page = third.getPage(result(2, "dccd:3", "dccd:4"), 2);
+		assertPids(page, "dccd:4");
+		assertNull(page.getNext());
+	}
+
+	@Test
+	public void objectsHaveNoTies() {
+		ListCursor first = ListCursor.parse(ListCursor.START, DccdSB.ID_NAME);
+		ListCursor.Page page = first.getPage(result(3, "dccd:1/a", "dccd:1/b"), 2);
+
+		ListCursor second = ListCursor.parse(page.getNext().format(), DccdSB.ID_NAME);
+		page = second.getPage(result(2, "dccd:1/b", "dccd:1/c"), 2);
+		assertPids(page, "dccd:1/c");
+		assertEquals(3, page.getTotal());
+	}
+
+	private static void assertPids(final ListCursor.Page page, final String... ids) {
+		assertEquals(ids.length, page.getHits().size());
+		for (int i = 0; i < ids.length; i++)
+			assertEquals(ids[i], page.getHits().get(i).getData().getPid());
+	}
+
+	/**
+	 * @param totalHits
+	 * @param ids
+	 *            Used for both the pid and the id
+	 * @return The search result
+	 */
+	private static SearchResult<DccdSB> result(final int totalHits, final String... ids) {
+		DccdSB[] projects = new DccdSB[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			projects[i] = SearchResultMocks.project(ids[i]);
+		return SearchResultMocks.result(totalHits, projects);
+	}
+}
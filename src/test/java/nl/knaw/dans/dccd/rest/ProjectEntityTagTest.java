@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replay;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import nl.knaw.dans.dccd.application.services.DccdUserService;
+import nl.knaw.dans.dccd.application.services.UserServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.model.DccdUser.Role;
+import nl.knaw.dans.dccd.model.DccdUserImpl;
+import nl.knaw.dans.dccd.rest.cache.ProjectSummaryCache;
+import nl.knaw.dans.dccd.rest.cache.UserDirectoryCache;
+import nl.knaw.dans.dccd.rest.util.DocumentRenderer;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * The ETag of a project document must change with everything that changes the document, 
+ * and an incomplete document has no ETag
+ * 
+ * @author paulboon
+ *
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest( { DccdUserService.class})
+public class ProjectEntityTagTest {
+	private static final DateTime LAST_CHANGE = new DateTime(2015, 6, 1, 12, 0, 0, 0);
+
+	private final TestProjectResource resource = new TestProjectResource();
+
+	@Test
+	public void sameVersionSameTag() {
+		assertEquals(resource.getProjectEntityTag(project(LAST_CHANGE), null, MediaType.APPLICATION_XML),
+				resource.getProjectEntityTag(project(LAST_CHANGE), null, MediaType.APPLICATION_XML));
+	}
+
+	@Test
+	public void tagIsStrong() {
+		assertFalse(resource.getProjectEntityTag(project(LAST_CHANGE), null, MediaType.APPLICATION_XML).isWeak());
+	}
+
+	@Test
+	public void tagDiffersForVersionRoleAndFormat() {
+		DccdUserImpl user = new DccdUserImpl();
+		user.setId("normaltestuser");
+		DccdUserImpl admin = new DccdUserImpl();
+		admin.setId("admin");
+		admin.addRole(Role.ADMIN);
+
+		Set<EntityTag> tags = new HashSet<EntityTag>();
+		tags.add(resource.getProjectEntityTag(project(LAST_CHANGE), null, MediaType.APPLICATION_XML));
+		tags.add(resource.getProjectEntityTag(project(LAST_CHANGE.plusSeconds(1)), null, MediaType.APPLICATION_XML));
+		tags.add(resource.getProjectEntityTag(project(LAST_CHANGE), user, MediaType.APPLICATION_XML));
+		tags.add(resource.getProjectEntityTag(project(LAST_CHANGE), admin, MediaType.APPLICATION_XML));
+		tags.add(resource.getProjectEntityTag(project(LAST_CHANGE), null, MediaType.APPLICATION_JSON));
+		assertEquals(5, tags.size());
+	}
+
+	@Test
+	public void completeDocumentHasTag() throws Exception {
+		setUpUserService(false);
+		Response response = resource.responseProjectXmlOrJson(project(LAST_CHANGE), null, ownerRenderer(project(LAST_CHANGE)));
+		assertNotNull(response.getMetadata().getFirst(HttpHeaders.ETAG));
+		assertNotNull(response.getMetadata().getFirst(HttpHeaders.LAST_MODIFIED));
+	}
+
+	@Test
+	public void incompleteDocumentHasNoTag() throws Exception {
+		setUpUserService(true);
+		Response response = resource.responseProjectXmlOrJson(project(LAST_CHANGE), null, ownerRenderer(project(LAST_CHANGE)));
+		assertEquals(200, response.getStatus());
+		assertNull(response.getMetadata().getFirst(HttpHeaders.ETAG));
+		assertNull(response.getMetadata().getFirst(HttpHeaders.LAST_MODIFIED));
+	}
+
+	/**
+	 * @param failing
+	 *            The lookup of the owner fails
+	 */
+	private void setUpUserService(final boolean failing) throws Exception {
+		UserDirectoryCache.getInstance().clear();
+		ProjectSummaryCache.getInstance().clear();
+
+		mockStatic(DccdUserService.class);
+		DccdUserService serviceMock = createMock(DccdUserService.class);
+		expect(DccdUserService.getService()).andStubReturn(serviceMock);
+		replay(DccdUserService.class);
+
+		DccdUserImpl owner = new DccdUserImpl();
+		owner.setId("owner");
+		if (failing)
+			expect(serviceMock.getUserById("owner")).andStubThrow(new UserServiceException("directory down"));
+		else
+			expect(serviceMock.getUserById("owner")).andStubReturn(owner);
+		replay(serviceMock);
+	}
+
+	private DocumentRenderer ownerRenderer(final DccdSB dccdSB) {
+		return new DocumentRenderer() {
+			public void render(DocumentWriter writer) {
+				writer.startElement("project");
+				writer.element("ownerOrganizationId", resource.getOwnerOrganizationId(dccdSB));
+				writer.endElement();
+			}
+		};
+	}
+
+	private static DccdSB project(final DateTime lastChange) {
+		DccdSB dccdSB = createMock(DccdSB.class);
+		expect(dccdSB.getPid()).andStubReturn("dccd:1");
+		expect(dccdSB.getId()).andStubReturn("dccd:1");
+		expect(dccdSB.getOwnerId()).andStubReturn("owner");
+		expect(dccdSB.getAdministrativeStateLastChange()).andStubReturn(lastChange);
+		expect(dccdSB.getPermissionDefaultLevel()).andStubReturn(null);
+		replay(dccdSB);
+		return dccdSB;
+	}
+
+	// an implementation of the abstract class to test, for requests without conditions that want XML
+	class TestProjectResource extends AbstractProjectResource {
+		private final Request request = createRequest();
+
+		private Request createRequest() {
+			Request requestMock = createMock(Request.class);
+			expect(requestMock.evaluatePreconditions(isA(Date.class), isA(EntityTag.class))).andStubReturn(null);
+			replay(requestMock);
+			return requestMock;
+		}
+
+		@Override
+		protected Request getRequest() {
+			return request;
+		}
+
+		@Override
+		protected String getResponseMediaType() {
+			return MediaType.APPLICATION_XML;
+		}
+
+		@Override
+		protected void appendSearchResultDataAsXml(DocumentWriter writer, DccdSB dccdSB, DccdUser requestingUser) {
+			// not used
+		}
+	};
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import static nl.knaw.dans.dccd.rest.SearchResultMocks.project;
+import static nl.knaw.dans.dccd.rest.SearchResultMocks.result;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import nl.knaw.dans.common.lang.dataset.DatasetState;
+import nl.knaw.dans.common.lang.search.SearchResult;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.model.DccdUser.Role;
+import nl.knaw.dans.dccd.model.DccdUserImpl;
+import nl.knaw.dans.dccd.rest.archival.ProjectAttributeStore;
+import nl.knaw.dans.dccd.rest.util.DocumentWriter;
+import nl.knaw.dans.dccd.rest.util.XmlDocumentWriter;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The deleted projects in a harvest; 
+ * everybody gets the ones that were harvested before, only an admin gets the other drafts
+ * 
+ * @author paulboon
+ *
+ */
+public class ProjectHarvestTest {
+	private static final DateTime LAST_CHANGE = new DateTime(2015, 6, 1, 12, 0, 0, 0);
+	private static final String PUBLISHED = DatasetState.PUBLISHED.toString();
+	private static final String DRAFT = DatasetState.DRAFT.toString();
+
+	private final TestProjectResource resource = new TestProjectResource();
+
+	@Before
+	public void setUp() {
+		// dccd:3 was harvested when it was published, dccd:2 never was
+		ProjectAttributeStore.getInstance().removeProject("dccd:1");
+		ProjectAttributeStore.getInstance().removeProject("dccd:2");
+		ProjectAttributeStore.getInstance().setAttribute("dccd:3", ProjectAttributeStore.HARVESTED, "true");
+	}
+
+	@Test
+	public void adminGetsAllDrafts() {
+		DccdUserImpl admin = new DccdUserImpl();
+		admin.setId("admin");
+		admin.addRole(Role.ADMIN);
+
+		String xml = harvest(admin);
+		assertTrue(xml.contains("<project><sid>dccd:1</sid></project>"));
+		assertTrue(xml.contains("<project status=\"deleted\"><sid>dccd:2</sid><state>DRAFT</state><stateChanged>"));
+		assertTrue(xml.contains("<project status=\"deleted\"><sid>dccd:3</sid><state>DRAFT</state><stateChanged>"));
+	}
+
+	@Test
+	public void othersGetOnlyWithdrawn() {
+		DccdUserImpl user = new DccdUserImpl();
+		user.setId("normaltestuser");
+
+		for (DccdUser requestingUser : new DccdUser[] { null, user }) {
+			String xml = harvest(requestingUser);
+			assertTrue(xml.contains("<project><sid>dccd:1</sid></project>"));
+			// never published as far as we know
+			assertFalse(xml.contains("dccd:2"));
+			// no draft details
+			assertTrue(xml.contains("<project status=\"deleted\"><sid>dccd:3</sid><stateChanged>"));
+			assertFalse(xml.contains("<state>"));
+		}
+	}
+
+	@Test
+	public void publishedIsRecorded() {
+		harvest(null);
+		assertEquals("true", ProjectAttributeStore.getInstance().getAttribute("dccd:1", ProjectAttributeStore.HARVESTED));
+		assertNull(ProjectAttributeStore.getInstance().getAttribute("dccd:2", ProjectAttributeStore.HARVESTED));
+	}
+
+	private String harvest(final DccdUser requestingUser) {
+		SearchResult<DccdSB> searchResults = result(project("dccd:1", PUBLISHED, LAST_CHANGE), 
+				project("dccd:2", DRAFT, LAST_CHANGE), project("dccd:3", DRAFT, LAST_CHANGE));
+		HarvestToken token = HarvestToken.start(null, LAST_CHANGE.plusDays(1));
+		ListCursor.Page page = token.getCursor().getPage(searchResults, 10);
+
+		StringWriter out = new StringWriter();
+		XmlDocumentWriter writer = new XmlDocumentWriter(out);
+		resource.getHarvestAsXml(searchResults, page, token, requestingUser).render(writer);
+		writer.endDocument();
+		return out.toString();
+	}
+
+	// only the sid of the published projects, and no lookups
+	class TestProjectResource extends ProjectResource {
+		@Override
+		protected void prefetchEnrichment(SearchResult<? extends DccdSB> searchResults) {
+			// not used
+		}
+
+		@Override
+		protected void appendSearchResultDataAsXml(DocumentWriter writer, DccdSB dccdSB, DccdUser requestingUser) {
+			writer.element("sid", dccdSB.getPid());
+		}
+	};
+}
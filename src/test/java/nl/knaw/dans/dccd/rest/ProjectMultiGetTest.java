@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import static nl.knaw.dans.dccd.rest.SearchResultMocks.project;
+import static nl.knaw.dans.dccd.rest.SearchResultMocks.result;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replay;
+import static org.powermock.api.easymock.PowerMock.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.knaw.dans.common.lang.search.SearchRequest;
+import nl.knaw.dans.common.lang.search.SearchResult;
+import nl.knaw.dans.dccd.application.services.DccdSearchService;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Getting several projects by their sid, the search service is mocked
+ * 
+ * @author paulboon
+ *
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest( { DccdSearchService.class})
+public class ProjectMultiGetTest {
+
+	private DccdSearchService serviceMock;
+
+	@Before
+	public void setUp() {
+		mockStatic(DccdSearchService.class);
+		serviceMock = createMock(DccdSearchService.class);
+		expect(DccdSearchService.getService()).andStubReturn(serviceMock);
+		replay(DccdSearchService.class);
+	}
+
+	@Test
+	public void oneSearchInRequestedOrderWithoutMissing() throws Exception {
+		// found in another order than requested
+		expectSearch(result(project("dccd:1"), project("dccd:2")));
+		replay(serviceMock);
+
+		List<DccdSB> projects = ProjectResource.searchProjectsByStoreIds(
+				Arrays.asList("dccd:2", "dccd:missing", "dccd:1"), true);
+
+		assertEquals(2, projects.size());
+		assertEquals("dccd:2", projects.get(0).getPid());
+		assertEquals("dccd:1", projects.get(1).getPid());
+		// exactly one search
+		verify(serviceMock);
+	}
+
+	@Test
+	public void nothingFound() throws Exception {
+		expectSearch(result());
+		replay(serviceMock);
+
+		assertEquals(0, ProjectResource.searchProjectsByStoreIds(Arrays.asList("dccd:missing"), false).size());
+		verify(serviceMock);
+	}
+
+	@Test
+	public void noSidsNoSearch() throws Exception {
+		replay(serviceMock);
+
+		assertEquals(0, ProjectResource.searchProjectsByStoreIds(new ArrayList<String>(), false).size());
+		verify(serviceMock);
+	}
+
+	@Test
+	public void filterValueIsEscaped() {
+		assertEquals("(dccd\\:1 OR dccd\\:2 OR easy\\-dataset\\:x\\~1)", 
+				ProjectResource.getStoreIdsFilterValue(Arrays.asList("dccd:1", "dccd:2", "easy-dataset:x~1")));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void expectSearch(final SearchResult<DccdSB> result) throws Exception {
+		SearchResult found = serviceMock.doSearch(isA(SearchRequest.class));
+		expect(found).andReturn(result).once();
+	}
+}
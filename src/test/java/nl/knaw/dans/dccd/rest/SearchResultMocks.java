@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest;
+
+import static org.easymock.EasyMock.expect;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.knaw.dans.common.lang.search.SearchHit;
+import nl.knaw.dans.common.lang.search.SearchResult;
+import nl.knaw.dans.dccd.search.DccdSB;
+
+import org.joda.time.DateTime;
+
+/**
+ * Mocked search results for the tests of the resources
+ * 
+ * @author paulboon
+ *
+ */
+public class SearchResultMocks {
+
+	private SearchResultMocks() {
+		// only static
+	}
+
+	/**
+	 * @param pid
+	 *            Used for both the pid and the id
+	 * @return The project
+	 */
+	public static DccdSB project(final String pid) {
+		return project(pid, null, null);
+	}
+
+	/**
+	 * @param pid
+	 *            Used for both the pid and the id
+	 * @param state
+	 *            The administrative state
+	 * @param lastChange
+	 *            The last change of the administrative state
+	 * @return The project
+	 */
+	public static DccdSB project(final String pid, final String state, final DateTime lastChange) {
+		DccdSB dccdSB = createMock(DccdSB.class);
+		expect(dccdSB.getPid()).andStubReturn(pid);
+		expect(dccdSB.getId()).andStubReturn(pid);
+		expect(dccdSB.getAdministrativeState()).andStubReturn(state);
+		expect(dccdSB.getAdministrativeStateLastChange()).andStubReturn(lastChange);
+		replay(dccdSB);
+		return dccdSB;
+	}
+
+	/**
+	 * @param projects
+	 * @return The search result with only these projects
+	 */
+	public static SearchResult<DccdSB> result(final DccdSB... projects) {
+		return result(projects.length, projects);
+	}
+
+	/**
+	 * @param totalHits
+	 * @param projects
+	 *            The hits
+	 * @return The search result
+	 */
+	@SuppressWarnings("unchecked")
+	public static SearchResult<DccdSB> result(final int totalHits, final DccdSB... projects) {
+		List<SearchHit<DccdSB>> hits = new ArrayList<SearchHit<DccdSB>>();
+		for (DccdSB dccdSB : projects) {
+			SearchHit<DccdSB> hit = createMock(SearchHit.class);
+			expect(hit.getData()).andStubReturn(dccdSB);
+			replay(hit);
+			hits.add(hit);
+		}
+		SearchResult<DccdSB> result = createMock(SearchResult.class);
+		expect(result.getHits()).andStubReturn(hits);
+		expect(result.getTotalHits()).andStubReturn(totalHits);
+		replay(result);
+		return result;
+	}
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.auth;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replay;
+
+import nl.knaw.dans.common.lang.user.User;
+import nl.knaw.dans.dccd.application.services.DccdUserService;
+import nl.knaw.dans.dccd.application.services.UserServiceException;
+import nl.knaw.dans.dccd.model.DccdUser;
+import nl.knaw.dans.dccd.model.DccdUserImpl;
+import nl.knaw.dans.dccd.rest.cache.UserDirectoryCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.sun.jersey.core.util.Base64;
+
+/**
+ * Signing and validation of the tokens, the user directory is mocked
+ * 
+ * @author paulboon
+ *
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest( { DccdUserService.class})
+public class TokenServiceTest {
+	private static final long HOUR = 3600 * 1000L;
+
+	private TokenService tokenService;
+	private DccdUserImpl user;
+
+	@Before
+	public void setUp() {
+		tokenService = new TokenService("secret".getBytes());
+		user = new DccdUserImpl();
+		user.setId("normaltestuser");
+		user.setState(User.State.ACTIVE);
+		UserDirectoryCache.getInstance().clear();
+	}
+
+	@Test
+	public void signedTokenHasUserId() {
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		assertEquals("normaltestuser", tokenService.getUserId(token));
+	}
+
+	@Test
+	public void expiredToken() {
+		String token = tokenService.createToken(user, System.currentTimeMillis() - 1);
+		assertNull(tokenService.getUserId(token));
+	}
+
+	@Test
+	public void tokenOfOtherSecret() {
+		String token = new TokenService("other".getBytes()).createToken(user, System.currentTimeMillis() + HOUR);
+		assertNull(tokenService.getUserId(token));
+	}
+
+	@Test
+	public void tamperedPayload() throws Exception {
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		String signature = token.substring(token.indexOf('.'));
+		String payload = "admin\n" + (System.currentTimeMillis() + HOUR);
+		String tampered = new String(Base64.encode(payload.getBytes("UTF-8")), "US-ASCII") + signature;
+		assertNull(tokenService.getUserId(tampered));
+	}
+
+	@Test
+	public void tamperedSignature() {
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		char last = token.charAt(token.length() - 3);
+		String tampered = token.substring(0, token.length() - 3) + (last == 'A' ? 'B' : 'A') 
+				+ token.substring(token.length() - 2);
+		assertNull(tokenService.getUserId(tampered));
+	}
+
+	@Test
+	public void notAToken() {
+		assertNull(tokenService.getUserId(""));
+		assertNull(tokenService.getUserId("bm9ybWFsdGVzdHVzZXI="));
+		assertNull(tokenService.getUserId("!!!.???"));
+	}
+
+	@Test
+	public void validTokenGivesUserFromDirectory() throws Exception {
+		setUpUserService(user);
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		assertEquals(user, tokenService.validateToken(token));
+	}
+
+	@Test
+	public void blockedUserIsRefused() throws Exception {
+		user.setState(User.State.BLOCKED);
+		setUpUserService(user);
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		assertNull(tokenService.validateToken(token));
+	}
+
+	@Test
+	public void removedUserIsRefused() throws Exception {
+		setUpUserService(null);
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		assertNull(tokenService.validateToken(token));
+	}
+
+	@Test(expected = UserServiceException.class)
+	public void failingDirectoryFailsValidation() throws Exception {
+		mockStatic(DccdUserService.class);
+		DccdUserService serviceMock = createMock(DccdUserService.class);
+		expect(DccdUserService.getService()).andStubReturn(serviceMock);
+		replay(DccdUserService.class);
+		expect(serviceMock.getUserById("normaltestuser")).andStubThrow(new UserServiceException("directory down"));
+		replay(serviceMock);
+
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		tokenService.validateToken(token);
+	}
+
+	@Test
+	public void cachedUserNeedsNoDirectory() throws Exception {
+		// the directory is not mocked
+		UserDirectoryCache.getInstance().put("normaltestuser", user);
+		String token = tokenService.createToken(user, System.currentTimeMillis() + HOUR);
+		assertEquals(user, tokenService.validateToken(token));
+	}
+
+	private void setUpUserService(final DccdUser directoryUser) throws Exception {
+		mockStatic(DccdUserService.class);
+		DccdUserService serviceMock = createMock(DccdUserService.class);
+		expect(DccdUserService.getService()).andStubReturn(serviceMock);
+		replay(DccdUserService.class);
+
+		expect(serviceMock.getUserById("normaltestuser")).andStubReturn(directoryUser);
+		replay(serviceMock);
+	}
+}
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.tridas;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventConsumer;
+
+import nl.knaw.dans.dccd.model.Project;
+import nl.knaw.dans.dccd.model.ProjectPermissionLevel;
+import nl.knaw.dans.dccd.repository.xml.XMLFilesRepositoryService;
+
+import org.junit.Test;
+import org.tridas.schema.TridasProject;
+
+/**
+ * Golden tests; the streaming restriction must give the same TRiDaS 
+ * as restricting the unmarshalled project, for the test data of the python tests.
+ * 
+ * The documents are compared without whitespace and namespace prefixes.
+ * 
+ * @author paulboon
+ *
+ */
+public class StreamingTridasRestrictorTest
+{
+    private static final String[] TESTDATA = {
+        "python-tests/testdata/testimport-tridasonly/data/tridas.xml",
+        "python-tests/testdata/testimport-associated/data/tridas.xml"
+    };
+
+    @Test
+    public void permissionRestrictionSameAsUnmarshalled() throws Exception
+    {
+        for (String file : TESTDATA)
+        {
+            TridasProject tridasProject = load(file);
+            for (ProjectPermissionLevel level : ProjectPermissionLevel.values())
+            {
+                TridasProject restricted = new TridasPermissionRestrictor().getRestricted(tridasProject, level);
+                TridasEventSource streamed = new StreamingTridasRestrictor(new BytesSource(marshal(tridasProject)), 
+                        new TridasPermissionRestrictor(), level);
+
+                assertEquals(file + " " + level, canonical(marshal(restricted)), canonical(write(streamed)));
+            }
+        }
+    }
+
+    @Test
+    public void requestedRestrictionSameAsUnmarshalled() throws Exception
+    {
+        for (String file : TESTDATA)
+        {
+            TridasProject tridasProject = load(file);
+            for (ProjectPermissionLevel level : ProjectPermissionLevel.values())
+            {
+                TridasProject restricted = new TridasRequestedLevelRestrictor().getRestricted(tridasProject, level);
+                TridasEventSource streamed = new StreamingTridasRestrictor(new BytesSource(marshal(tridasProject)), 
+                        new TridasRequestedLevelRestrictor(), level);
+
+                assertEquals(file + " " + level, canonical(marshal(restricted)), canonical(write(streamed)));
+            }
+        }
+    }
+
+    @Test
+    public void requestedMoreThanPermittedSameAsUnmarshalled() throws Exception
+    {
+        TridasProject tridasProject = load(TESTDATA[0]);
+        for (ProjectPermissionLevel requestedLevel : ProjectPermissionLevel.values())
+        {
+            for (ProjectPermissionLevel level : ProjectPermissionLevel.values())
+            {
+                if (requestedLevel.isPermittedBy(level))
+                    continue;
+
+                // the same as the ProjectResource does
+                TridasProject restricted = new TridasRequestedLevelRestrictor().getRestricted(tridasProject, requestedLevel);
+                new TridasPermissionRestrictor().restrictToPermitted(restricted, level);
+                TridasEventSource streamed = new StreamingTridasRestrictor(
+                        new StreamingTridasRestrictor(new BytesSource(marshal(tridasProject)), 
+                                new TridasRequestedLevelRestrictor(), requestedLevel), 
+                        new TridasPermissionRestrictor(), level);
+
+                assertEquals(requestedLevel + " " + level, canonical(marshal(restricted)), canonical(write(streamed)));
+            }
+        }
+    }
+
+    @Test
+    public void chainedRestrictorsReadTheSourceOnce() throws Exception
+    {
+        BytesSource source = new BytesSource(marshal(load(TESTDATA[0])));
+        TridasEventSource streamed = new StreamingTridasRestrictor(
+                new StreamingTridasRestrictor(source, new TridasRequestedLevelRestrictor(), ProjectPermissionLevel.SERIES), 
+                new TridasPermissionRestrictor(), ProjectPermissionLevel.ELEMENT);
+
+        write(streamed);
+        assertEquals(1, source.writeCount);
+    }
+
+    @Test
+    public void restrictedCopyLeavesProjectUnchanged() throws Exception
+    {
+        TridasProject tridasProject = load(TESTDATA[0]);
+        String original = canonical(marshal(tridasProject));
+
+        new TridasPermissionRestrictor().getRestricted(tridasProject, ProjectPermissionLevel.MINIMAL);
+        new TridasRequestedLevelRestrictor().getRestricted(tridasProject, ProjectPermissionLevel.PROJECT);
+        new TridasPermissionRestrictor().getRestricted(tridasProject, ProjectPermissionLevel.SERIES);
+
+        assertEquals(original, canonical(marshal(tridasProject)));
+    }
+
+    private static TridasProject load(final String file) throws Exception
+    {
+        InputStream input = new FileInputStream(file);
+        try
+        {
+            Project project = XMLFilesRepositoryService.createDendroProjectFromTridasXML(input, "testuser");
+            return project.getTridas();
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    private static byte[] marshal(final TridasProject tridasProject) throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TridasMarshallerPool.getInstance().marshal(tridasProject, output);
+        return output.toByteArray();
+    }
+
+    private static byte[] write(final TridasEventSource source) throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(output, "UTF-8");
+        source.writeTo(writer);
+        writer.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * @return The elements with their namespace, sorted attributes and trimmed text
+     */
+    private static String canonical(final byte[] document) throws XMLStreamException
+    {
+        StringBuilder canonical = new StringBuilder();
+        XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(new ByteArrayInputStream(document));
+        while (reader.hasNext())
+        {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement())
+            {
+                StartElement start = event.asStartElement();
+                canonical.append('<').append(start.getName());
+                List<String> attributes = new ArrayList<String>();
+                for (Iterator<?> i = start.getAttributes(); i.hasNext();)
+                {
+                    Attribute attribute = (Attribute) i.next();
+                    attributes.add(attribute.getName() + "=" + attribute.getValue());
+                }
+                Collections.sort(attributes);
+                canonical.append(attributes).append(">\n");
+            }
+            else if (event.isEndElement())
+            {
+                canonical.append("</").append(event.asEndElement().getName()).append(">\n");
+            }
+            else if (event.isCharacters() && event.asCharacters().getData().trim().length() > 0)
+            {
+                canonical.append(event.asCharacters().getData().trim()).append('\n');
+            }
+        }
+        reader.close();
+        return canonical.toString();
+    }
+
+    private static class BytesSource implements TridasEventSource
+    {
+        private final byte[] document;
+        int writeCount = 0;
+
+        BytesSource(final byte[] document)
+        {
+            this.document = document;
+        }
+
+        public void writeTo(final XMLEventConsumer consumer) throws XMLStreamException, IOException
+        {
+            writeCount++;
+            XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(new ByteArrayInputStream(document));
+            while (reader.hasNext())
+            {
+                consumer.add(reader.nextEvent());
+            }
+            reader.close();
+        }
+    }
+}
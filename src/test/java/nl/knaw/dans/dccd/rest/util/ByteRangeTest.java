@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Parsing of the Range header
+ *
+ * @author paulboon
+ *
+ */
+public class ByteRangeTest
+{
+    @Test
+    public void firstAndLast()
+    {
+        ByteRange range = ByteRange.parse("bytes=0-499", 1000);
+        assertEquals(0, range.getFirst());
+        assertEquals(499, range.getLast());
+        assertEquals(500, range.getLength());
+        assertEquals("bytes 0-499/1000", range.toContentRange());
+        assertEquals("bytes=0-499", range.toRangeHeader());
+    }
+
+    @Test
+    public void openEnded()
+    {
+        ByteRange range = ByteRange.parse("bytes=500-", 1000);
+        assertEquals(500, range.getFirst());
+        assertEquals(999, range.getLast());
+    }
+
+    @Test
+    public void suffix()
+    {
+        ByteRange range = ByteRange.parse("bytes=-300", 1000);
+        assertEquals(700, range.getFirst());
+        assertEquals(999, range.getLast());
+
+        // longer than the content is all of it
+        range = ByteRange.parse("bytes=-3000", 1000);
+        assertEquals(0, range.getFirst());
+        assertEquals(1000, range.getLength());
+    }
+
+    @Test
+    public void lastBeyondEndIsTruncated()
+    {
+        ByteRange range = ByteRange.parse("bytes=900-2000", 1000);
+        assertEquals(999, range.getLast());
+        assertEquals(100, range.getLength());
+    }
+
+    @Test
+    public void notSatisfiable()
+    {
+        assertNull(ByteRange.parse("bytes=1000-", 1000));
+        assertNull(ByteRange.parse("bytes=1000-1100", 1000));
+        assertNull(ByteRange.parse("bytes=-0", 1000));
+        assertNull(ByteRange.parse("bytes=0-", 0));
+        assertEquals("bytes */1000", ByteRange.toUnsatisfiedContentRange(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void multipleRanges()
+    {
+        ByteRange.parse("bytes=0-9,20-29", 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherUnit()
+    {
+        ByteRange.parse("items=0-9", 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lastBeforeFirst()
+    {
+        ByteRange.parse("bytes=20-10", 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notANumber()
+    {
+        ByteRange.parse("bytes=a-b", 1000);
+    }
+}
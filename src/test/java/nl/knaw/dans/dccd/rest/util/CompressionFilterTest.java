@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Test;
+
+/**
+ * Choosing the compression from the Accept-Encoding header
+ *
+ * @author paulboon
+ *
+ */
+public class CompressionFilterTest
+{
+    @Test
+    public void noHeaderNoCompression()
+    {
+        assertNull(CompressionFilter.selectEncoding(null));
+        assertNull(CompressionFilter.selectEncoding(""));
+        assertNull(CompressionFilter.selectEncoding("identity"));
+    }
+
+    @Test
+    public void gzipPreferred()
+    {
+        assertEquals(CompressionFilter.GZIP, CompressionFilter.selectEncoding("gzip"));
+        assertEquals(CompressionFilter.GZIP, CompressionFilter.selectEncoding("deflate, gzip"));
+        assertEquals(CompressionFilter.GZIP, CompressionFilter.selectEncoding("x-gzip"));
+        assertEquals(CompressionFilter.GZIP, CompressionFilter.selectEncoding("GZIP;q=0.5"));
+        assertEquals(CompressionFilter.DEFLATE, CompressionFilter.selectEncoding("deflate"));
+    }
+
+    @Test
+    public void refusedCoding()
+    {
+        assertNull(CompressionFilter.selectEncoding("gzip;q=0"));
+        assertEquals(CompressionFilter.DEFLATE, CompressionFilter.selectEncoding("gzip;q=0, deflate"));
+        assertNull(CompressionFilter.selectEncoding("gzip;q=0.0, deflate; q=0"));
+        assertNull(CompressionFilter.selectEncoding("gzip;q=invalid"));
+    }
+
+    @Test
+    public void wildcard()
+    {
+        assertEquals(CompressionFilter.GZIP, CompressionFilter.selectEncoding("*"));
+        assertNull(CompressionFilter.selectEncoding("*;q=0"));
+        assertEquals(CompressionFilter.GZIP, CompressionFilter.selectEncoding("gzip, *;q=0"));
+    }
+
+    @Test
+    public void explicitRefusalWinsOverWildcard()
+    {
+        assertEquals(CompressionFilter.DEFLATE, CompressionFilter.selectEncoding("gzip;q=0, *"));
+        assertEquals(CompressionFilter.DEFLATE, CompressionFilter.selectEncoding("*, gzip;q=0"));
+        assertNull(CompressionFilter.selectEncoding("gzip;q=0, deflate;q=0, *"));
+        assertEquals(CompressionFilter.DEFLATE, CompressionFilter.selectEncoding("x-gzip, gzip;q=0, *"));
+    }
+
+    @Test
+    public void compressibleTypes()
+    {
+        assertTrue(CompressionFilter.isCompressible(new MediaType("application", "xml")));
+        assertTrue(CompressionFilter.isCompressible(new MediaType("application", "json")));
+        assertTrue(CompressionFilter.isCompressible(new MediaType("application", "x-ndjson")));
+        assertTrue(CompressionFilter.isCompressible(new MediaType("application", "atom+xml")));
+        assertTrue(CompressionFilter.isCompressible(new MediaType("text", "plain")));
+        assertFalse(CompressionFilter.isCompressible(new MediaType("application", "pdf")));
+        assertFalse(CompressionFilter.isCompressible(new MediaType("application", "zip")));
+        assertFalse(CompressionFilter.isCompressible(null));
+    }
+
+    @Test
+    public void compressedETagIsWeak()
+    {
+        assertEquals(new EntityTag("dccd:1-123", true), CompressionFilter.toWeak(new EntityTag("dccd:1-123")));
+        assertEquals("W/\"dccd:1-123\"", CompressionFilter.toWeak("\"dccd:1-123\""));
+        assertEquals("W/\"dccd:1-123\"", CompressionFilter.toWeak("W/\"dccd:1-123\""));
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2015 DANS - Data Archiving and Networked Services
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package nl.knaw.dans.dccd.rest.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Streaming a file from the store, using a local file instead of a Fedora datastream
+ *
+ * @author paulboon
+ *
+ */
+public class StreamingDownloadTest
+{
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        // larger than one pooled buffer
+        content = new byte[3 * BufferPool.getShared().getBufferSize() + 7];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        file = File.createTempFile("download", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void writeCopiesAllBytes() throws IOException
+    {
+        StreamingDownload download = StreamingDownload.open(file.toURI().toURL());
+        assertEquals(content.length, download.getContentLength());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        download.write(output);
+        assertArrayEquals(content, output.toByteArray());
+    }
+
+    @Test
+    public void copyStopsWhenClientGoesAway() throws IOException
+    {
+        StreamingDownload download = StreamingDownload.open(file.toURI().toURL());
+        final int accepted = 2;
+        OutputStream output = new OutputStream()
+        {
+            private int writes = 0;
+
+            @Override
+            public void write(int b) throws IOException
+            {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                if (++writes > accepted)
+                    throw new IOException("Broken pipe");
+            }
+        };
+
+        long copied = download.copy(download.getConnection().getInputStream(), output, -1);
+        assertEquals(accepted * BufferPool.getShared().getBufferSize(), copied);
+        download.close();
+    }
+
+    @Test
+    public void rangeIsWritten() throws IOException
+    {
+        String rangeHeader = "bytes=10-19";
+        Response response = StreamingDownload.open(file.toURI().toURL(), rangeHeader)
+                .responseBuilder(rangeHeader, null).build();
+
+        assertEquals(StreamingDownload.PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 10-19/" + content.length, 
+                response.getMetadata().getFirst(StreamingDownload.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), write(response));
+    }
+
+    @Test
+    public void rangeOutsideFileIsNotSatisfiable() throws IOException
+    {
+        String rangeHeader = "bytes=" + content.length + "-";
+        Response response = StreamingDownload.open(file.toURI().toURL(), rangeHeader)
+                .responseBuilder(rangeHeader, null).build();
+
+        assertEquals(StreamingDownload.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+        assertEquals("bytes */" + content.length, 
+                response.getMetadata().getFirst(StreamingDownload.CONTENT_RANGE));
+    }
+
+    @Test
+    public void invalidRangeSendsAll() throws IOException
+    {
+        String rangeHeader = "bytes=0-9,20-29";
+        Response response = StreamingDownload.open(file.toURI().toURL(), rangeHeader)
+                .responseBuilder(rangeHeader, null).build();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertArrayEquals(content, write(response));
+    }
+
+    @Test
+    public void ifRangeWithEntityTag() throws IOException
+    {
+        StreamingDownload download = withValidators(0, "\"v1\"");
+
+        assertTrue(download.isIfRangeSatisfied(null));
+        assertTrue(download.isIfRangeSatisfied("\"v1\""));
+        assertFalse(download.isIfRangeSatisfied("\"v2\""));
+        // weak tags can't be used for ranges
+        assertFalse(download.isIfRangeSatisfied("W/\"v1\""));
+        // no tag from the store
+        assertFalse(withValidators(0, null).isIfRangeSatisfied("\"v1\""));
+    }
+
+    @Test
+    public void ifRangeWithDate() throws IOException
+    {
+        long lastModified = 1420070400000L; // 2015-01-01T00:00:00Z
+        StreamingDownload download = withValidators(lastModified + 123, null);
+
+        assertTrue(download.isIfRangeSatisfied(httpDate(lastModified)));
+        assertFalse(download.isIfRangeSatisfied(httpDate(lastModified - 1000)));
+        assertFalse(download.isIfRangeSatisfied("not a date"));
+        assertFalse(withValidators(0, null).isIfRangeSatisfied(httpDate(lastModified)));
+    }
+
+    @Test
+    public void changedFileIsSentCompletely() throws IOException
+    {
+        String rangeHeader = "bytes=10-19";
+        Response response = withValidators(0, "\"v2\"").responseBuilder(rangeHeader, "\"v1\"").build();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertArrayEquals(content, write(response));
+    }
+
+    private StreamingDownload withValidators(final long lastModified, final String etag) throws IOException
+    {
+        // only the headers, the content is requested when it is written
+        return new StreamingDownload(file.toURI().toURL(), null, content.length, 
+                MediaType.APPLICATION_OCTET_STREAM, lastModified, etag);
+    }
+
+    private static String httpDate(final long time)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+    private static byte[] write(final Response response) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return output.toByteArray();
+    }
+}